@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.vallat.louis.databaseHandler.DatabaseConnection;
+import xyz.vallat.louis.databaseHandler.PostsTable;
+import xyz.vallat.louis.redditHandler.RedditPost;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedup and persistence of the posts on a table already holding many rows.
+ * The current path, the seen-post index in front of the database and the
+ * listing claimed in one transaction, is measured next to the path it
+ * replaced: a database lookup per post and a transaction per post. The size
+ * of the database file is printed after the table is filled and at the end of
+ * the trial.
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DedupBenchmark {
+
+    /**
+     * Size of the listings claimed.
+     */
+    private static final int LISTING_SIZE = 25;
+
+    /**
+     * How many posts are inserted per transaction while filling the table.
+     */
+    private static final int FILL_BATCH = 10000;
+
+    /**
+     * How many rows the table holds before the measurements.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    /**
+     * Folder of the database.
+     */
+    private File directory;
+
+    /**
+     * The database.
+     */
+    private DatabaseConnection database;
+
+    /**
+     * The table.
+     */
+    private PostsTable posts;
+
+    /**
+     * Query looking for a post id straight in the database.
+     */
+    private String lookupQuery;
+
+    /**
+     * Counter used to build the ids of the new posts.
+     */
+    private long nextId;
+
+    /**
+     * Create the database and fill the table.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    @Setup(Level.Trial)
+    public void setup()
+            throws IOException, ClassNotFoundException, SQLException {
+        this.directory = Files.createTempDirectory("dedup-bench").toFile();
+        this.database = new DatabaseConnection(
+                new File(this.directory, "bench.db").getPath());
+        this.posts = new PostsTable(this.database, "bench");
+        this.posts.create();
+        this.posts.load(0);
+        List<RedditPost> batch = new ArrayList<>(FILL_BATCH);
+        for (int i = 0; i < this.rows; i++) {
+            batch.add(post(seenId(i)));
+            if (batch.size() == FILL_BATCH || i == this.rows - 1) {
+                this.posts.claim(batch, p -> true);
+                batch.clear();
+            }
+        }
+        this.posts.load(10000);
+        this.lookupQuery = "SELECT 1 FROM " + this.posts.getTableName()
+                + " WHERE postId = ? LIMIT 1;";
+        printFileSize("filled");
+    }
+
+    /**
+     * Print the database size and remove it.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        printFileSize("after the trial");
+        this.database.close();
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * Look for a post already in the table, through the seen-post index.
+     *
+     * @return if the post was found.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    public boolean containsSeen() throws SQLException {
+        return this.posts.contains(randomSeenId());
+    }
+
+    /**
+     * Look for a new post, through the seen-post index.
+     *
+     * @return if the post was found.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    public boolean containsUnseen() throws SQLException {
+        return this.posts.contains(randomUnseenId());
+    }
+
+    /**
+     * Look for a post already in the table, straight in the database.
+     *
+     * @return if the post was found.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    public boolean databaseLookupSeen() throws SQLException {
+        return databaseLookup(randomSeenId());
+    }
+
+    /**
+     * Look for a new post, straight in the database.
+     *
+     * @return if the post was found.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    public boolean databaseLookupUnseen() throws SQLException {
+        return databaseLookup(randomUnseenId());
+    }
+
+    /**
+     * Claim a listing of new posts in one transaction. Scores are per post.
+     *
+     * @return the posts claimed.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    @OperationsPerInvocation(LISTING_SIZE)
+    public List<RedditPost> claimListing() throws SQLException {
+        return this.posts.claim(newListing(), p -> true);
+    }
+
+    /**
+     * Claim a listing of new posts with a transaction per post. Scores are
+     * per post.
+     *
+     * @return the posts claimed.
+     *
+     * @throws SQLException
+     */
+    @Benchmark
+    @OperationsPerInvocation(LISTING_SIZE)
+    public List<RedditPost> claimOneByOne() throws SQLException {
+        List<RedditPost> claimed = new ArrayList<>();
+        for (RedditPost post : newListing()) {
+            claimed.addAll(this.posts.claim(
+                    Collections.singletonList(post), p -> true));
+        }
+        return claimed;
+    }
+
+    /**
+     * Look for a post id straight in the database.
+     *
+     * @param postId the post id.
+     * @return if the post was found.
+     *
+     * @throws SQLException
+     */
+    private boolean databaseLookup(String postId) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement lookup = this.database.prepare(this.lookupQuery);
+            lookup.setString(1, postId);
+            try (ResultSet res = lookup.executeQuery()) {
+                return res.next();
+            }
+        }
+    }
+
+    /**
+     * Build a listing of new posts.
+     *
+     * @return the listing.
+     */
+    private List<RedditPost> newListing() {
+        List<RedditPost> listing = new ArrayList<>(LISTING_SIZE);
+        for (int i = 0; i < LISTING_SIZE; i++) {
+            listing.add(post("n" + Long.toString(this.nextId++, 36)));
+        }
+        return listing;
+    }
+
+    /**
+     * Get the id of a random post of the filled table.
+     *
+     * @return the post id.
+     */
+    private String randomSeenId() {
+        return seenId(ThreadLocalRandom.current().nextInt(this.rows));
+    }
+
+    /**
+     * Get the id of a random post that is not in the table.
+     *
+     * @return the post id.
+     */
+    private static String randomUnseenId() {
+        return "u" + Long.toString(
+                ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+    }
+
+    /**
+     * Get the id of a post of the filled table.
+     *
+     * @param i the post number.
+     * @return the post id.
+     */
+    private static String seenId(int i) {
+        return "s" + Integer.toString(i, 36);
+    }
+
+    /**
+     * Build a synthetic post looking like an image post of a listing.
+     *
+     * @param id the post id.
+     * @return the post.
+     */
+    private static RedditPost post(String id) {
+        return new RedditPost(RedditPost.decodeId(id), RedditPost.Type.IMAGE,
+                "softwaregore", "Windows update stuck at 99% since " + id,
+                "bluescreen",
+                "/r/softwaregore/comments/" + id + "/windows_update/",
+                "https://preview.redd.it/" + id + ".jpg?auto=webp&s="
+                + "0123456789abcdef0123456789abcdef01234567",
+                "image", 1234, false, false, false, false);
+    }
+
+    /**
+     * Print the size of the database files.
+     *
+     * @param when when the size is measured.
+     */
+    private void printFileSize(String when) {
+        long size = 0;
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += f.length();
+            }
+        }
+        int count;
+        try {
+            count = this.posts.count();
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
+            return;
+        }
+        System.out.println("[*] Database " + when + ": " + count + " rows, "
+                + size + " bytes, " + (count == 0 ? 0 : size / count)
+                + " bytes per row.");
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import xyz.vallat.louis.ConfigFileReader;
+import xyz.vallat.louis.Hypervisor;
+import xyz.vallat.louis.metricsHandler.Counter;
+import xyz.vallat.louis.metricsHandler.Histogram;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import xyz.vallat.louis.socialMediaHandler.RateLimitedPoster;
+import xyz.vallat.louis.socialMediaHandler.TwitterBot;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of the whole pipeline: the Hypervisor scans stub
+ * subreddits, downloads the stub images and tweets them to a stub Twitter,
+ * and the tweets per second are measured once the pipeline is warm. The
+ * options are given as name=value arguments:
+ * <ul>
+ * <li>subreddits: number of subreddits (4),</li>
+ * <li>rate: new posts per second in every subreddit (2),</li>
+ * <li>delay: polling delay, in seconds (2),</li>
+ * <li>warmup and duration: in seconds (15 and 60),</li>
+ * <li>latency: latency of every stub request, in milliseconds (20),</li>
+ * <li>errors: share of the stub requests failing (0.01),</li>
+ * <li>workers: posts published at the same time (4),</li>
+ * <li>hash: images hashed at the same time (one per processor),</li>
+ * <li>pending: posts waiting in the outbox before the scans are skipped
+ * (1000),</li>
+ * <li>image: size of the images, like 1280x960,</li>
+ * <li>virtual: true to run the bot on virtual threads, on Java 21,</li>
+ * <li>verbose: true to keep the bot output.</li>
+ * </ul>
+ *
+ * @author louis
+ */
+public final class EndToEndLoadTest {
+
+    /**
+     * Utility class.
+     */
+    private EndToEndLoadTest() {
+    }
+
+    /**
+     * Run the load test.
+     *
+     * @param args the options, as name=value.
+     *
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Options are name=value, "
+                        + "and " + arg + " isn't.");
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        int subreddits = Integer.parseInt(options.getOrDefault("subreddits",
+                "4"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "2"));
+        int delay = Integer.parseInt(options.getOrDefault("delay", "2"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "15"));
+        int duration = Integer.parseInt(options.getOrDefault("duration",
+                "60"));
+        int latency = Integer.parseInt(options.getOrDefault("latency", "20"));
+        double errors = Double.parseDouble(options.getOrDefault("errors",
+                "0.01"));
+        String workers = options.getOrDefault("workers", "4");
+        String hash = options.getOrDefault("hash",
+                String.valueOf(Runtime.getRuntime().availableProcessors()));
+        String pending = options.getOrDefault("pending", "1000");
+        String[] image = options.getOrDefault("image", "1280x960").split("x");
+        boolean verbose = Boolean.parseBoolean(options.getOrDefault("verbose",
+                "false"));
+        boolean virtual = Boolean.parseBoolean(options.getOrDefault("virtual",
+                "false"));
+
+        PrintStream out = System.out;
+        try (StubRedditServer reddit = new StubRedditServer(rate,
+                Integer.parseInt(image[0]), Integer.parseInt(image[1]),
+                latency, errors);
+                StubTwitterServer twitter = new StubTwitterServer(latency,
+                        errors)) {
+            File directory = Files.createTempDirectory("load-test").toFile();
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < subreddits; i++) {
+                names.append(i == 0 ? "" : ",").append("load").append(i);
+            }
+            Properties settings = new Properties();
+            settings.setProperty("subreddit", names.toString());
+            settings.setProperty("delay", String.valueOf(delay));
+            settings.setProperty("min_delay", "1");
+            settings.setProperty("max_delay", String.valueOf(delay * 4));
+            settings.setProperty("reddit_base_url", reddit.getBaseURL());
+            settings.setProperty("sqlite_db_name", "load.db");
+            settings.setProperty("clear_database", "Y");
+            settings.setProperty("reddit_posts_limit", "100");
+            settings.setProperty("reddit_posts_sorting_order", "new");
+            settings.setProperty("retry_base_delay", "0");
+            settings.setProperty("working_directory",
+                    new File(directory, "bot").getPath());
+            settings.setProperty("max_text_length", "280");
+            settings.setProperty("pipeline.publish.workers", workers);
+            settings.setProperty("pipeline.hash.workers", hash);
+            settings.setProperty("outbox_max_pending", pending);
+            settings.setProperty("publish_threads", workers);
+            settings.setProperty("virtual_threads", virtual ? "Y" : "N");
+            settings.setProperty("publish_retry_delay", "1");
+            settings.setProperty("metrics_interval", "5");
+            for (String endpoint : new String[]{"post", "reply"}) {
+                String prefix = "rate_limit.Twitter." + endpoint + ".";
+                settings.setProperty(prefix + "burst", "1000000");
+                settings.setProperty(prefix + "per_hour", "1000000000");
+            }
+            for (String key : new String[]{"consumerKey", "consumerSecret",
+                "accessToken", "accessSecret"}) {
+                settings.setProperty("twitterAPI_" + key, "stub");
+            }
+            settings.setProperty("twitterAPI_restBaseURL",
+                    twitter.getBaseURL() + "/1.1/");
+            settings.setProperty("twitterAPI_uploadBaseURL",
+                    twitter.getBaseURL() + "/1.1/");
+            File settingsFile = new File(directory, "settings.conf");
+            try (OutputStream file = new FileOutputStream(settingsFile)) {
+                settings.store(file, "Load test");
+            }
+            ConfigFileReader.load(settingsFile.getPath());
+
+            if (!verbose) {
+                System.setOut(new PrintStream(new NullOutputStream()));
+                System.setErr(new PrintStream(new NullOutputStream()));
+            }
+            Hypervisor hypervisor = Hypervisor.getSingleton();
+            hypervisor.addSocialMedia(new RateLimitedPoster(new TwitterBot()));
+            Thread bot = new Thread(() -> {
+                try {
+                    hypervisor.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "hypervisor");
+            bot.start();
+
+            out.println("Warming up for " + warmup + " seconds.");
+            TimeUnit.SECONDS.sleep(warmup);
+            long startPosts = reddit.getPosts();
+            long startTweets = twitter.getMediaTweets();
+            long start = System.nanoTime();
+            out.println("Measuring for " + duration + " seconds.");
+            TimeUnit.SECONDS.sleep(duration);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long posts = reddit.getPosts() - startPosts;
+            long tweets = twitter.getMediaTweets() - startTweets;
+            hypervisor.shutdown();
+            bot.join(TimeUnit.SECONDS.toMillis(30));
+            System.setOut(out);
+
+            out.printf("Reddit posts created: %.1f/s (%d)%n",
+                    posts / seconds, posts);
+            out.printf("Tweets with media:    %.1f/s (%d)%n",
+                    tweets / seconds, tweets);
+            out.printf("Requests: %d to Reddit, %d to Twitter, "
+                    + "%d errors injected%n", reddit.getRequests(),
+                    twitter.getRequests(),
+                    reddit.getErrors() + twitter.getErrors());
+            out.printf("Media uploaded: %d MB%n",
+                    twitter.getMediaBytes() >> 20);
+            for (Map.Entry<String, Histogram> timer : MetricsRegistry
+                    .getSingleton().getHistograms().entrySet()) {
+                if (timer.getKey().startsWith("outbox_latency_seconds")
+                        || timer.getKey().startsWith("stage_")) {
+                    double[] p = timer.getValue()
+                            .getPercentiles(0.5, 0.99);
+                    out.printf("%s p50 %.2fs p99 %.2fs%n", timer.getKey(),
+                            p[0], p[1]);
+                }
+            }
+            for (Map.Entry<String, Counter> counter : MetricsRegistry
+                    .getSingleton().getCounters().entrySet()) {
+                if (counter.getKey().startsWith("backpressure_skips_total")) {
+                    out.println(counter.getKey() + " "
+                            + counter.getValue().getCount());
+                }
+            }
+            out.println("Bot files and metrics: " + directory);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.vallat.louis.redditHandler.EntityDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode the titles and authors of the recorded listing, with the entity
+ * decoder and with the replace chain it replaced. An operation decodes all of
+ * them; run it with the GC profiler (-prof gc) to compare the allocations.
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityDecoderBenchmark {
+
+    /**
+     * The titles and authors, as the JSON reader gives them.
+     */
+    private String[] values;
+
+    /**
+     * The decoder.
+     */
+    private EntityDecoder decoder;
+
+    /**
+     * Read the titles and authors of the recorded listing.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        JsonObject listing = JsonParser.parseString(new String(
+                ListingFixtures.load("listing-100"), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+        List<String> read = new ArrayList<>();
+        for (JsonElement child : listing.getAsJsonObject("data")
+                .getAsJsonArray("children")) {
+            JsonObject post = child.getAsJsonObject()
+                    .getAsJsonObject("data");
+            for (String field : new String[]{"title", "author"}) {
+                JsonElement value = post.get(field);
+                if (value != null && !value.isJsonNull()) {
+                    read.add(value.getAsString());
+                }
+            }
+        }
+        this.values = read.toArray(new String[0]);
+        this.decoder = new EntityDecoder();
+    }
+
+    /**
+     * Decode every value with the entity decoder.
+     *
+     * @param blackhole where the decoded values go.
+     */
+    @Benchmark
+    public void decoder(Blackhole blackhole) {
+        for (String value : this.values) {
+            blackhole.consume(this.decoder.decode(value));
+        }
+    }
+
+    /**
+     * Decode every value with the replace chain the parser used.
+     *
+     * @param blackhole where the decoded values go.
+     */
+    @Benchmark
+    public void replaceChain(Blackhole blackhole) {
+        for (String value : this.values) {
+            blackhole.consume(value
+                    .replace("&lt;", "<")
+                    .replace("&gt;", ">")
+                    .replace("&amp;", "&"));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.vallat.louis.databaseHandler.HammingIndex;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of near-duplicate image hashes in an index already holding many
+ * hashes. The index is measured next to a linear scan of all the hashes,
+ * which is what it replaces.
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HammingIndexBenchmark {
+
+    /**
+     * Largest distance between two hashes of the same image.
+     */
+    private static final int MAX_DISTANCE = 6;
+
+    /**
+     * How many bits are flipped to build a near-duplicate.
+     */
+    private static final int FLIPPED_BITS = 3;
+
+    /**
+     * How many hashes the index holds.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * The index.
+     */
+    private HammingIndex index;
+
+    /**
+     * The hashes in the index, for the linear scan and the near-duplicates.
+     */
+    private long[] hashes;
+
+    /**
+     * Fill the index with random hashes.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        this.index = new HammingIndex(MAX_DISTANCE);
+        this.hashes = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.hashes[i] = random.nextLong();
+            this.index.add(this.hashes[i], i);
+        }
+    }
+
+    /**
+     * Look up a hash close to none of the indexed ones.
+     *
+     * @return the nearest id.
+     */
+    @Benchmark
+    public long lookupUnique() {
+        return this.index.findNearest(ThreadLocalRandom.current().nextLong(),
+                -1);
+    }
+
+    /**
+     * Look up a hash a few bits away from an indexed one.
+     *
+     * @return the nearest id.
+     */
+    @Benchmark
+    public long lookupDuplicate() {
+        return this.index.findNearest(nearDuplicate(), -1);
+    }
+
+    /**
+     * Look up a hash a few bits away from an indexed one by comparing it to
+     * every hash.
+     *
+     * @return the nearest id.
+     */
+    @Benchmark
+    public long linearScan() {
+        long hash = nearDuplicate();
+        long nearest = -1;
+        int best = MAX_DISTANCE + 1;
+        for (int i = 0; i < this.hashes.length; i++) {
+            int distance = Long.bitCount(this.hashes[i] ^ hash);
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Build a hash a few bits away from a random indexed one.
+     *
+     * @return the hash.
+     */
+    private long nearDuplicate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long hash = this.hashes[random.nextInt(this.hashes.length)];
+        for (int i = 0; i < FLIPPED_BITS; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Listing fixtures of the benchmarks. The recorded listings are read from the
+ * fixtures folder, and the synthetic ones are built by repeating the children
+ * of the biggest recorded listing with new ids.
+ *
+ * @author louis
+ */
+public final class ListingFixtures {
+
+    /**
+     * Prefix of the synthetic listings names, followed by their size.
+     */
+    public static final String SYNTHETIC = "synthetic-";
+
+    /**
+     * The recorded listing the synthetic ones are built from.
+     */
+    private static final String TEMPLATE = "listing-100";
+
+    /**
+     * Utility class.
+     */
+    private ListingFixtures() {
+    }
+
+    /**
+     * Get a listing fixture, as the bytes Reddit would send.
+     *
+     * @param name the fixture name, like listing-25 or synthetic-10000.
+     * @return the listing JSON.
+     */
+    public static byte[] load(String name) {
+        if (!name.startsWith(SYNTHETIC)) {
+            return read(name);
+        }
+        int size = Integer.parseInt(name.substring(SYNTHETIC.length()));
+        JsonObject listing = JsonParser.parseString(
+                new String(read(TEMPLATE), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+        JsonObject data = listing.getAsJsonObject("data");
+        JsonArray template = data.getAsJsonArray("children");
+        JsonArray children = new JsonArray();
+        for (int i = 0; i < size; i++) {
+            JsonObject child = template.get(i % template.size())
+                    .deepCopy().getAsJsonObject();
+            JsonObject post = child.getAsJsonObject("data");
+            String id = Integer.toString(i, 36);
+            post.addProperty("id", id);
+            post.addProperty("name", "t3_" + id);
+            JsonElement permalink = post.get("permalink");
+            if (permalink != null && !permalink.isJsonNull()) {
+                post.addProperty("permalink", "/r/softwaregore/comments/"
+                        + id + "/");
+            }
+            children.add(child);
+        }
+        data.add("children", children);
+        data.addProperty("dist", size);
+        return listing.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a recorded fixture.
+     *
+     * @param name the fixture name.
+     * @return the fixture content.
+     */
+    private static byte[] read(String name) {
+        try (InputStream in = ListingFixtures.class.getResourceAsStream(
+                "/fixtures/" + name + ".json")) {
+            if (in == null) {
+                throw new IllegalArgumentException(
+                        "There is no fixture named " + name + ".");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
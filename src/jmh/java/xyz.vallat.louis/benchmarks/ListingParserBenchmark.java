@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.vallat.louis.redditHandler.RedditListing;
+import xyz.vallat.louis.redditHandler.RedditListingParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parse the listing fixtures the way the extractor parses the listings, from
+ * the bytes of the response to the reddit posts. Run it with the GC profiler
+ * (-prof gc) to get the bytes allocated per listing: gc.alloc.rate.norm,
+ * divided by the children counter, is the allocation per post.
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingParserBenchmark {
+
+    /**
+     * The listing to parse.
+     */
+    @Param({"listing-25", "listing-100", "synthetic-10000"})
+    public String fixture;
+
+    /**
+     * The listing JSON.
+     */
+    private byte[] json;
+
+    /**
+     * The parser.
+     */
+    private RedditListingParser parser;
+
+    /**
+     * Load the fixture. The parser logs every post it can't read, which would
+     * only measure the console, so the standard output is muted.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.json = ListingFixtures.load(this.fixture);
+        this.parser = new RedditListingParser("softwaregore");
+        System.setOut(new PrintStream(new NullOutputStream()));
+    }
+
+    /**
+     * Parse the listing.
+     *
+     * @param counters the posts counters.
+     * @return the listing.
+     *
+     * @throws IOException
+     */
+    @Benchmark
+    public RedditListing parse(PostCounters counters) throws IOException {
+        RedditListing listing;
+        try (Reader in = new InputStreamReader(
+                new ByteArrayInputStream(this.json), StandardCharsets.UTF_8)) {
+            listing = this.parser.parse(in);
+        }
+        counters.children += listing.size();
+        counters.posts += listing.getPosts().size();
+        return listing;
+    }
+
+    /**
+     * How many children were read, and how many of them became posts.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PostCounters {
+
+        /**
+         * Children read.
+         */
+        public long children;
+
+        /**
+         * Posts built.
+         */
+        public long posts;
+
+        /**
+         * Reset the counters before every iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.children = 0;
+            this.posts = 0;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.vallat.louis.redditHandler.RedditListingParser;
+import xyz.vallat.louis.redditHandler.RedditPost;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure the heap retained by every post of a listing, for the compact post
+ * and for the layout it replaced: a String id, a double score, four booleans
+ * and a new String for every field of every post. The posts of several
+ * listings are kept, the heap is measured after a full GC on both sides, and
+ * the difference is divided by the number of posts.
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseSerialGC", "-Xms1g", "-Xmx1g"})
+public class PostMemoryBenchmark {
+
+    /**
+     * The post layout to measure.
+     */
+    @Param({"legacy", "compact"})
+    public String layout;
+
+    /**
+     * How many times the listing is parsed and kept.
+     */
+    @Param({"10"})
+    public int listings;
+
+    /**
+     * The listing JSON.
+     */
+    private byte[] json;
+
+    /**
+     * Load the fixture, and mute the parser logs.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.json = ListingFixtures.load("synthetic-10000");
+        System.setOut(new PrintStream(new NullOutputStream()));
+    }
+
+    /**
+     * Parse the listings, keep their posts in the measured layout and
+     * measure the heap they retain.
+     *
+     * @param counters the retained bytes counter.
+     * @return the kept posts.
+     *
+     * @throws IOException
+     */
+    @Benchmark
+    public List<Object> retain(MemoryCounters counters) throws IOException {
+        long before = usedHeap();
+        List<Object> kept = new ArrayList<>();
+        for (int i = 0; i < this.listings; i++) {
+            RedditListingParser parser = new RedditListingParser(
+                    "softwaregore");
+            try (Reader in = new InputStreamReader(
+                    new ByteArrayInputStream(this.json),
+                    StandardCharsets.UTF_8)) {
+                for (RedditPost post : parser.parse(in).getPosts()) {
+                    kept.add("legacy".equals(this.layout)
+                            ? new LegacyPost(post) : post);
+                }
+            }
+        }
+        long after = usedHeap();
+        counters.bytesPerPost = (double) (after - before) / kept.size();
+        return kept;
+    }
+
+    /**
+     * Get the used heap after a full GC.
+     *
+     * @return the used heap, in bytes.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+
+    /**
+     * Retained heap per post of the last invocation.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MemoryCounters {
+
+        /**
+         * Retained bytes per post.
+         */
+        public double bytesPerPost;
+
+        /**
+         * Reset the counter before every iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytesPerPost = 0;
+        }
+    }
+
+    /**
+     * The fields of a post before it was made compact. Like the streaming
+     * parser did, every string is a new one, read from the JSON.
+     */
+    private static final class LegacyPost {
+
+        /**
+         * Post's id.
+         */
+        private final String postId;
+
+        /**
+         * Post's title.
+         */
+        private final String title;
+
+        /**
+         * Is the post in quarantine?
+         */
+        private final boolean quarantine;
+
+        /**
+         * Post's score.
+         */
+        private final double score;
+
+        /**
+         * Post's hint.
+         */
+        private final String postHint;
+
+        /**
+         * Is this post crosspostable?
+         */
+        private final boolean crosspostable;
+
+        /**
+         * Is this post NSFW?
+         */
+        private final boolean over18;
+
+        /**
+         * Post's author.
+         */
+        private final String author;
+
+        /**
+         * Post's permalink.
+         */
+        private final String permalink;
+
+        /**
+         * Is this post a spoiler?
+         */
+        private final boolean spoiler;
+
+        /**
+         * Post's media url.
+         */
+        private final String url;
+
+        /**
+         * Copy a compact post, with new strings.
+         *
+         * @param post the post to copy.
+         */
+        private LegacyPost(RedditPost post) {
+            this.postId = post.getPostId();
+            this.title = copy(post.getTitle());
+            this.quarantine = post.isQuarantine();
+            this.score = post.getScore();
+            this.postHint = copy(post.getPostHint());
+            this.crosspostable = post.isCrosspostable();
+            this.over18 = post.isOver18();
+            this.author = copy(post.getAuthor());
+            this.permalink = copy(post.getPermalink());
+            this.spoiler = post.isSpoiler();
+            this.url = copy(post.getUrl());
+        }
+
+        /**
+         * Copy a string with its own characters array, as new String(String)
+         * shares the array of the original.
+         *
+         * @param value the string to copy.
+         * @return the copy.
+         */
+        private static String copy(String value) {
+            return new String(value.toCharArray());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+
+/**
+ * Stub of Reddit. Every subreddit asked for gets new image posts at a steady
+ * rate from the first time it is asked for, its listings are served newest
+ * first and honor the before cursor, and every post has its own generated
+ * image, so no two posts are duplicates.
+ *
+ * @author louis
+ */
+public final class StubRedditServer extends StubServer {
+
+    /**
+     * A listing URL.
+     */
+    private static final Pattern LISTING
+            = Pattern.compile("/r/([^/]+)/[a-z]+\\.json");
+
+    /**
+     * An image URL.
+     */
+    private static final Pattern IMAGE
+            = Pattern.compile("/img/([^/]+)/([0-9a-z]+)\\.jpg");
+
+    /**
+     * New posts per second in every subreddit.
+     */
+    private final double postsPerSecond;
+
+    /**
+     * Width of the images.
+     */
+    private final int imageWidth;
+
+    /**
+     * Height of the images.
+     */
+    private final int imageHeight;
+
+    /**
+     * When every subreddit was first asked for, in milliseconds.
+     */
+    private final Map<String, Long> subreddits = new ConcurrentHashMap<>();
+
+    /**
+     * Start the stub.
+     *
+     * @param postsPerSecond new posts per second in every subreddit.
+     * @param imageWidth width of the images.
+     * @param imageHeight height of the images.
+     * @param latency latency added to every request, in milliseconds.
+     * @param errorRate share of the requests failing, from 0 to 1.
+     *
+     * @throws IOException
+     */
+    public StubRedditServer(double postsPerSecond, int imageWidth,
+            int imageHeight, int latency, double errorRate)
+            throws IOException {
+        super("stub-reddit", latency, errorRate);
+        this.postsPerSecond = postsPerSecond;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String path = uri.getPath();
+        Map<String, String> query = query(uri.getRawQuery());
+        Matcher m;
+        if ("/api/search_reddit_names.json".equals(path)) {
+            JsonArray names = new JsonArray();
+            names.add(query.get("query"));
+            JsonObject body = new JsonObject();
+            body.add("names", names);
+            send(exchange, 200, "application/json",
+                    body.toString().getBytes(StandardCharsets.UTF_8));
+        } else if ((m = LISTING.matcher(path)).matches()) {
+            send(exchange, 200, "application/json", listing(m.group(1),
+                    Integer.parseInt(query.getOrDefault("limit", "25")),
+                    query.get("before")));
+        } else if ((m = IMAGE.matcher(path)).matches()) {
+            send(exchange, 200, "image/jpeg", image(m.group(1),
+                    Long.parseLong(m.group(2), 36)));
+        } else {
+            send(exchange, 404, "text/plain", new byte[0]);
+        }
+    }
+
+    /**
+     * Build the listing of a subreddit.
+     *
+     * @param subreddit the subreddit.
+     * @param limit the most posts in the listing.
+     * @param before fullname of the newest post already seen, or null.
+     * @return the listing JSON.
+     */
+    private byte[] listing(String subreddit, int limit, String before) {
+        long now = System.currentTimeMillis();
+        long start = this.subreddits.computeIfAbsent(subreddit, s -> now);
+        long newest = (long) ((now - start) / 1000.0 * this.postsPerSecond);
+        long oldest = before == null ? 0
+                : Long.parseLong(before.substring("t3_".length()), 36) + 1;
+        JsonArray children = new JsonArray();
+        for (long n = newest; n >= Math.max(oldest, newest - limit + 1)
+                && n >= 0; n--) {
+            children.add(post(subreddit, n));
+        }
+        JsonObject data = new JsonObject();
+        data.addProperty("dist", children.size());
+        data.add("children", children);
+        JsonObject listing = new JsonObject();
+        listing.addProperty("kind", "Listing");
+        listing.add("data", data);
+        return listing.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build a post.
+     *
+     * @param subreddit the subreddit.
+     * @param n the post number.
+     * @return the post, as a listing child.
+     */
+    private JsonObject post(String subreddit, long n) {
+        String id = Long.toString(n, 36);
+        String url = getBaseURL() + "/img/" + subreddit + "/" + id + ".jpg";
+        JsonObject post = new JsonObject();
+        post.addProperty("id", id);
+        post.addProperty("name", "t3_" + id);
+        post.addProperty("title", "Post " + id + " of " + subreddit);
+        post.addProperty("author", "stub");
+        post.addProperty("quarantine", false);
+        post.addProperty("score", 1);
+        post.addProperty("post_hint", "image");
+        post.addProperty("is_crosspostable", true);
+        post.addProperty("over_18", false);
+        post.addProperty("spoiler", false);
+        post.addProperty("url", url);
+        post.addProperty("permalink", "/r/" + subreddit + "/comments/" + id
+                + "/");
+        JsonObject source = new JsonObject();
+        source.addProperty("url", url);
+        JsonObject image = new JsonObject();
+        image.add("source", source);
+        JsonArray images = new JsonArray();
+        images.add(image);
+        JsonObject preview = new JsonObject();
+        preview.add("images", images);
+        post.add("preview", preview);
+        JsonObject child = new JsonObject();
+        child.addProperty("kind", "t3");
+        child.add("data", post);
+        return child;
+    }
+
+    /**
+     * Generate the image of a post: random grey blocks, so every image has
+     * its own perceptual hash.
+     *
+     * @param subreddit the subreddit.
+     * @param n the post number.
+     * @return the JPEG image.
+     *
+     * @throws IOException
+     */
+    private byte[] image(String subreddit, long n) throws IOException {
+        Random random = new Random(subreddit.hashCode() * 31L + n);
+        BufferedImage image = new BufferedImage(this.imageWidth,
+                this.imageHeight, BufferedImage.TYPE_INT_RGB);
+        int[] blocks = new int[16 * 16];
+        for (int i = 0; i < blocks.length; i++) {
+            int grey = random.nextInt(256);
+            blocks[i] = grey << 16 | grey << 8 | grey;
+        }
+        for (int y = 0; y < this.imageHeight; y++) {
+            for (int x = 0; x < this.imageWidth; x++) {
+                image.setRGB(x, y, blocks[y * 16 / this.imageHeight * 16
+                        + x * 16 / this.imageWidth]);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Get the number of posts created in all the subreddits so far.
+     *
+     * @return the number of posts.
+     */
+    public long getPosts() {
+        long now = System.currentTimeMillis();
+        long posts = 0;
+        for (long start : this.subreddits.values()) {
+            posts += (long) ((now - start) / 1000.0 * this.postsPerSecond) + 1;
+        }
+        return posts;
+    }
+
+    /**
+     * Parse a query string.
+     *
+     * @param query the raw query, or null.
+     * @return the parameters.
+     */
+    private static Map<String, String> query(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(pair.substring(0, equals),
+                            pair.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP server standing for a remote API in the load tests. Every
+ * request waits for the configured latency, and fails with a 503 at the
+ * configured error rate.
+ *
+ * @author louis
+ */
+public abstract class StubServer implements AutoCloseable {
+
+    /**
+     * The server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The threads answering the requests.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Latency added to every request, in milliseconds.
+     */
+    private final int latency;
+
+    /**
+     * Share of the requests failing, from 0 to 1.
+     */
+    private final double errorRate;
+
+    /**
+     * Number of requests received.
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Number of errors sent on purpose.
+     */
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Start a server on a free port of the loopback interface.
+     *
+     * @param name the server name, for its threads.
+     * @param latency latency added to every request, in milliseconds.
+     * @param errorRate share of the requests failing, from 0 to 1.
+     *
+     * @throws IOException
+     */
+    protected StubServer(String name, int latency, double errorRate)
+            throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        this.executor = Executors.newFixedThreadPool(32, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::dispatch);
+        this.server.start();
+    }
+
+    /**
+     * Answer a request, after the latency, unless it fails on purpose.
+     *
+     * @param exchange the request.
+     *
+     * @throws IOException
+     */
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            this.requests.incrementAndGet();
+            if (this.latency > 0) {
+                TimeUnit.MILLISECONDS.sleep(this.latency);
+            }
+            if (ThreadLocalRandom.current().nextDouble() < this.errorRate) {
+                this.errors.incrementAndGet();
+                drain(exchange.getRequestBody());
+                send(exchange, 503, "application/json", errorBody());
+                return;
+            }
+            handle(exchange);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            send(exchange, 500, "text/plain",
+                    String.valueOf(ex).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answer a request.
+     *
+     * @param exchange the request.
+     *
+     * @throws IOException
+     */
+    protected abstract void handle(HttpExchange exchange) throws IOException;
+
+    /**
+     * Get the body of the errors sent on purpose.
+     *
+     * @return the body.
+     */
+    protected byte[] errorBody() {
+        return "{}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send a response.
+     *
+     * @param exchange the request.
+     * @param status the status code.
+     * @param contentType the body type.
+     * @param body the body.
+     *
+     * @throws IOException
+     */
+    protected static void send(HttpExchange exchange, int status,
+            String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Read a request body to its end.
+     *
+     * @param in the body.
+     * @return how many bytes were read.
+     *
+     * @throws IOException
+     */
+    protected static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Get the URL of the server.
+     *
+     * @return the URL, without a trailing slash.
+     */
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    /**
+     * Get the number of requests received.
+     *
+     * @return the number of requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of errors sent on purpose.
+     *
+     * @return the number of errors.
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stub of the Twitter API, answering the calls the bot makes: the account
+ * check, the tweets with media, the replies and the media uploads. Nothing is
+ * checked, every call gets a new id.
+ *
+ * @author louis
+ */
+public final class StubTwitterServer extends StubServer {
+
+    /**
+     * Path of the API.
+     */
+    private static final String API = "/1.1/";
+
+    /**
+     * The user every tweet belongs to.
+     */
+    private static final String USER = "{\"id\":1,\"id_str\":\"1\","
+            + "\"name\":\"stub\",\"screen_name\":\"stub\","
+            + "\"created_at\":\"Mon Jan 01 00:00:00 +0000 2018\"}";
+
+    /**
+     * The last id given.
+     */
+    private final AtomicLong ids = new AtomicLong(1000);
+
+    /**
+     * Number of tweets with media.
+     */
+    private final AtomicLong mediaTweets = new AtomicLong();
+
+    /**
+     * Number of text tweets and replies.
+     */
+    private final AtomicLong textTweets = new AtomicLong();
+
+    /**
+     * Number of bytes of media received.
+     */
+    private final AtomicLong mediaBytes = new AtomicLong();
+
+    /**
+     * Start the stub.
+     *
+     * @param latency latency added to every request, in milliseconds.
+     * @param errorRate share of the requests failing, from 0 to 1.
+     *
+     * @throws IOException
+     */
+    public StubTwitterServer(int latency, double errorRate)
+            throws IOException {
+        super("stub-twitter", latency, errorRate);
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        long bytes = drain(exchange.getRequestBody());
+        String body;
+        if ((API + "account/verify_credentials.json").equals(path)) {
+            body = USER;
+        } else if ((API + "statuses/update_with_media.json").equals(path)) {
+            this.mediaTweets.incrementAndGet();
+            this.mediaBytes.addAndGet(bytes);
+            body = status();
+        } else if ((API + "statuses/update.json").equals(path)) {
+            this.textTweets.incrementAndGet();
+            body = status();
+        } else if ((API + "media/upload.json").equals(path)) {
+            this.mediaBytes.addAndGet(bytes);
+            long id = this.ids.incrementAndGet();
+            body = "{\"media_id\":" + id + ",\"media_id_string\":\"" + id
+                    + "\"}";
+        } else {
+            send(exchange, 404, "application/json",
+                    errorBody(34, "Sorry, that page does not exist."));
+            return;
+        }
+        send(exchange, 200, "application/json",
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected byte[] errorBody() {
+        return errorBody(130, "Over capacity");
+    }
+
+    /**
+     * Build an error of the Twitter API.
+     *
+     * @param code the error code.
+     * @param message the error message.
+     * @return the error JSON.
+     */
+    private static byte[] errorBody(int code, String message) {
+        return ("{\"errors\":[{\"code\":" + code + ",\"message\":\""
+                + message + "\"}]}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build a new tweet.
+     *
+     * @return the tweet JSON.
+     */
+    private String status() {
+        long id = this.ids.incrementAndGet();
+        String createdAt = new SimpleDateFormat(
+                "EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH).format(new Date());
+        return "{\"id\":" + id + ",\"id_str\":\"" + id + "\","
+                + "\"created_at\":\"" + createdAt + "\",\"text\":\"\","
+                + "\"user\":" + USER + "}";
+    }
+
+    /**
+     * Get the number of tweets with media.
+     *
+     * @return the number of tweets.
+     */
+    public long getMediaTweets() {
+        return mediaTweets.get();
+    }
+
+    /**
+     * Get the number of text tweets and replies.
+     *
+     * @return the number of tweets.
+     */
+    public long getTextTweets() {
+        return textTweets.get();
+    }
+
+    /**
+     * Get the number of bytes of media received.
+     *
+     * @return the number of bytes.
+     */
+    public long getMediaBytes() {
+        return mediaBytes.get();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.vallat.louis.Workers;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a batch of blocking tasks on the pools of the bot, with platform
+ * threads and with virtual threads, at the same concurrency. Every task
+ * blocks for the latency, like a request to Reddit or Twitter. At the end of
+ * every trial, the peak number of live platform threads of the JVM is
+ * printed, to show what each concurrency costs in OS threads.
+ *
+ * The virtual mode needs Java 21:
+ * JAVA_HOME=/path/to/jdk-21 mvn -Pbenchmark,java21 test-compile exec:exec
+ *
+ * @author louis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+    /**
+     * The kind of threads.
+     */
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    /**
+     * How many tasks can run at the same time.
+     */
+    @Param({"64", "1024", "4096"})
+    public int concurrency;
+
+    /**
+     * How many tasks in a batch.
+     */
+    @Param({"4096"})
+    public int tasks;
+
+    /**
+     * How long every task blocks, in milliseconds.
+     */
+    @Param({"20"})
+    public int latency;
+
+    /**
+     * The pool.
+     */
+    private ExecutorService pool;
+
+    /**
+     * Create the pool.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.pool = "virtual".equals(this.mode)
+                ? Workers.newVirtualPool("bench", this.concurrency)
+                : Workers.newPlatformPool("bench", this.concurrency);
+    }
+
+    /**
+     * Stop the pool, and print the peak number of platform threads.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdownNow();
+        System.out.println("Peak platform threads: " + ManagementFactory
+                .getThreadMXBean().getPeakThreadCount());
+    }
+
+    /**
+     * Run a batch of tasks and wait for all of them.
+     *
+     * @throws InterruptedException
+     */
+    @Benchmark
+    public void batch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(this.tasks);
+        for (int i = 0; i < this.tasks; i++) {
+            this.pool.execute(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(this.latency);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
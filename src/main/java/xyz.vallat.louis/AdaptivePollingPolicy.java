@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+/**
+ * Adaptive delay between two scans of a subreddit. The arrival rate of the
+ * posts is estimated from what every scan sees, and the delay is chosen so a
+ * scan only fills half of the listing window. A full window means posts may
+ * have been missed, so the next scan happens as soon as allowed.
+ *
+ * @author louis
+ */
+final class AdaptivePollingPolicy {
+
+    /**
+     * Weight of the last observation in the arrival rate estimation.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Part of the listing window a scan should fill.
+     */
+    private static final double TARGET_FILL = 0.5;
+
+    /**
+     * How much the delay can change in one decision.
+     */
+    private static final double MAX_STEP = 2.0;
+
+    /**
+     * Minimum delay between two scans, in seconds.
+     */
+    private int minDelay;
+
+    /**
+     * Maximum delay between two scans, in seconds.
+     */
+    private int maxDelay;
+
+    /**
+     * Size of the listing window.
+     */
+    private int limit;
+
+    /**
+     * Estimated arrival rate, in posts per second. Negative until the first
+     * observation.
+     */
+    private double rate = -1;
+
+    /**
+     * Current delay, in seconds.
+     */
+    private int delay;
+
+    /**
+     * Number of decisions that shortened the delay.
+     */
+    private long shortened;
+
+    /**
+     * Number of decisions that lengthened the delay.
+     */
+    private long lengthened;
+
+    /**
+     * Number of scans that filled the listing window.
+     */
+    private long overflows;
+
+    /**
+     * Main constructor.
+     *
+     * @param delay the initial delay, in seconds.
+     * @param minDelay minimum delay between two scans, in seconds.
+     * @param maxDelay maximum delay between two scans, in seconds.
+     * @param limit size of the listing window.
+     */
+    AdaptivePollingPolicy(int delay, int minDelay, int maxDelay, int limit) {
+        configure(delay, minDelay, maxDelay, limit);
+    }
+
+    /**
+     * Change the bounds of the policy. The estimated arrival rate is kept, and
+     * the current delay is restarted from the given one.
+     *
+     * @param delay the new delay, in seconds.
+     * @param minDelay minimum delay between two scans, in seconds.
+     * @param maxDelay maximum delay between two scans, in seconds.
+     * @param limit size of the listing window.
+     */
+    synchronized void configure(int delay, int minDelay, int maxDelay,
+            int limit) {
+        if (minDelay < 1 || maxDelay < minDelay) {
+            throw new IllegalArgumentException(
+                    "Delays should be 1 <= min <= max, and they were "
+                    + minDelay + " and " + maxDelay + ".");
+        }
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.limit = limit;
+        this.delay = Math.max(minDelay, Math.min(maxDelay, delay));
+    }
+
+    /**
+     * Choose the delay before the next scan.
+     *
+     * @param arrivals how many new posts the scan saw.
+     * @param children how many children the listing had, including the posts
+     * that are not shared.
+     * @param elapsed how long since the previous scan, in seconds.
+     * @return the delay before the next scan, in seconds.
+     */
+    synchronized int nextDelay(int arrivals, int children, double elapsed) {
+        int previous = this.delay;
+        if (elapsed > 0) {
+            double observed = arrivals / elapsed;
+            this.rate = this.rate < 0 ? observed
+                    : SMOOTHING * observed + (1 - SMOOTHING) * this.rate;
+        }
+        double wanted;
+        if (children >= this.limit) {
+            this.overflows++;
+            wanted = this.minDelay;
+        } else if (this.rate <= 0) {
+            wanted = previous * MAX_STEP;
+        } else {
+            wanted = Math.max(previous / MAX_STEP, Math.min(previous * MAX_STEP,
+                    TARGET_FILL * this.limit / this.rate));
+        }
+        this.delay = (int) Math.max(this.minDelay,
+                Math.min(this.maxDelay, Math.round(wanted)));
+        if (this.delay < previous) {
+            this.shortened++;
+        } else if (this.delay > previous) {
+            this.lengthened++;
+        }
+        return this.delay;
+    }
+
+    /**
+     * Get the current delay.
+     *
+     * @return the delay, in seconds.
+     */
+    synchronized int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Get the estimated arrival rate.
+     *
+     * @return the rate, in posts per minute.
+     */
+    synchronized double getRatePerMinute() {
+        return Math.max(0, rate) * 60;
+    }
+
+    /**
+     * Get the number of decisions that shortened the delay.
+     *
+     * @return the count.
+     */
+    synchronized long getShortened() {
+        return shortened;
+    }
+
+    /**
+     * Get the number of decisions that lengthened the delay.
+     *
+     * @return the count.
+     */
+    synchronized long getLengthened() {
+        return lengthened;
+    }
+
+    /**
+     * Get the number of scans that filled the listing window.
+     *
+     * @return the count.
+     */
+    synchronized long getOverflows() {
+        return overflows;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("delay %ds, %.2f posts/min, "
+                + "%d shortened, %d lengthened, %d overflows",
+                delay, getRatePerMinute(), shortened, lengthened, overflows);
+    }
+}
@@ -20,12 +20,18 @@ import xyz.vallat.louis.exceptions.NoSuchFile;
 import xyz.vallat.louis.exceptions.NotSufficientRights;
 import xyz.vallat.louis.exceptions.NoSuchProperty;
 import java.io.File;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
- * A config file reader.
+ * A snapshot of the config file. The file is read once for the whole process,
+ * and a snapshot never changes: reloading the file swaps in a new snapshot
+ * and tells the listeners, so the settings read together always come from the
+ * same version of the file.
  *
  * @author louis
  */
@@ -36,56 +42,195 @@ public final class ConfigFileReader {
      */
     private static String CONFIGFILE = "data/settings.conf";
 
+    /**
+     * The current snapshot, null until the config file is read.
+     */
+    private static volatile ConfigFileReader SINGLETON = null;
+
+    /**
+     * Told every time a new snapshot is swapped in.
+     */
+    private static final List<ConfigListener> LISTENERS
+            = new CopyOnWriteArrayList<>();
+
     /**
      * The properties object.
      */
-    private final Properties prop = new Properties();
+    private final Properties prop;
 
     /**
-     * Create a new config file reader that automatically reads the config file.
+     * Create a snapshot.
+     *
+     * @param prop the properties read from the config file.
+     */
+    private ConfigFileReader(Properties prop) {
+        this.prop = prop;
+    }
+
+    /**
+     * Get the current snapshot, reading the config file the first time.
+     *
+     * @return the snapshot.
      *
      * @throws NoSuchFile
      * @throws NotSufficientRights
      */
-    public ConfigFileReader() throws NoSuchFile, NotSufficientRights {
-        readConfigFile();
+    public static ConfigFileReader getSingleton()
+            throws NoSuchFile, NotSufficientRights {
+        ConfigFileReader current = SINGLETON;
+        if (current == null) {
+            synchronized (ConfigFileReader.class) {
+                current = SINGLETON;
+                if (current == null) {
+                    current = new ConfigFileReader(readConfigFile());
+                    SINGLETON = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
-     * Create a new config file reader that automatically reads the config file,
-     * precising the config file name.
+     * Read another config file, and make it the current snapshot.
+     *
+     * @param conf the config file path name.
+     * @return the snapshot.
      *
-     * @param conf the cnfig file path name.
      * @throws NoSuchFile
      * @throws NotSufficientRights
      */
-    public ConfigFileReader(String conf) throws NoSuchFile, NotSufficientRights {
-        CONFIGFILE = conf;
-        readConfigFile();
+    public static ConfigFileReader load(String conf)
+            throws NoSuchFile, NotSufficientRights {
+        synchronized (ConfigFileReader.class) {
+            CONFIGFILE = conf;
+            SINGLETON = null;
+        }
+        return getSingleton();
     }
 
     /**
-     * Read the config file.
+     * Read the config file again. If it has changed, the new snapshot is
+     * swapped in and the listeners are told. If it can't be read, or comes
+     * back empty because it is still being written, the current snapshot is
+     * kept and nobody is told.
      *
-     * @throws RedditReposterBot.exceptions.NoSuchFile
-     * @throws RedditReposterBot.exceptions.NotSufficientRights
+     * @return if a new snapshot was swapped in.
      */
-    public void readConfigFile() throws NoSuchFile, NotSufficientRights {
-        if (!new File(CONFIGFILE).exists()) {
-            throw new NoSuchFile(
-                    "[!] The config file " + CONFIGFILE + " doesn't exists.");
-        } else if (!new File(CONFIGFILE).canRead()) {
-            throw new NotSufficientRights(
-                    "[!] Can't read the config file " + CONFIGFILE + ".");
+    public static boolean reload() {
+        ConfigFileReader previous;
+        ConfigFileReader current;
+        synchronized (ConfigFileReader.class) {
+            previous = SINGLETON;
+            try {
+                current = new ConfigFileReader(parseConfigFile());
+            } catch (NoSuchFile | NotSufficientRights ex) {
+                System.err.println(ex.getMessage()
+                        + " Keeping the current settings.");
+                return false;
+            } catch (IOException ex) {
+                System.err.println("[!] Error on reloading the config file: "
+                        + ex.getMessage() + " Keeping the current settings.");
+                return false;
+            }
+            if (current.prop.isEmpty()) {
+                System.err.println("[!] The config file " + CONFIGFILE
+                        + " is empty. Keeping the current settings.");
+                return false;
+            }
+            if (previous != null && previous.prop.equals(current.prop)) {
+                return false;
+            }
+            SINGLETON = current;
+        }
+        System.out.println("[+] The config file " + CONFIGFILE
+                + " has been reloaded.");
+        if (previous != null) {
+            for (ConfigListener listener : LISTENERS) {
+                try {
+                    listener.configChanged(previous, current);
+                } catch (RuntimeException ex) {
+                    System.err.println("[!] Could not apply the new settings: "
+                            + ex);
+                }
+            }
         }
+        return true;
+    }
+
+    /**
+     * Tell a listener every time a new snapshot is swapped in.
+     *
+     * @param listener the listener.
+     */
+    public static void addListener(ConfigListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Stop telling a listener about the new snapshots.
+     *
+     * @param listener the listener.
+     */
+    public static void removeListener(ConfigListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Get the config file.
+     *
+     * @return the config file.
+     */
+    public static File getConfigFile() {
+        return new File(CONFIGFILE);
+    }
+
+    /**
+     * Read the config file.
+     *
+     * @return the properties of the config file.
+     *
+     * @throws NoSuchFile
+     * @throws NotSufficientRights
+     */
+    private static Properties readConfigFile()
+            throws NoSuchFile, NotSufficientRights {
         try {
-            prop.load(new FileInputStream(new File(CONFIGFILE)));
+            return parseConfigFile();
         } catch (IOException ex) {
             System.out.println(
                     "[!] Error on loading the config file.");
             System.out.println("[!] " + ex.getMessage());
+            return new Properties();
         }
+    }
 
+    /**
+     * Read the config file, failing if it can't be parsed.
+     *
+     * @return the properties of the config file.
+     *
+     * @throws NoSuchFile
+     * @throws NotSufficientRights
+     * @throws IOException
+     */
+    private static Properties parseConfigFile()
+            throws NoSuchFile, NotSufficientRights, IOException {
+        File file = new File(CONFIGFILE);
+        if (!file.exists()) {
+            throw new NoSuchFile(
+                    "[!] The config file " + CONFIGFILE + " doesn't exists.");
+        } else if (!file.canRead()) {
+            throw new NotSufficientRights(
+                    "[!] Can't read the config file " + CONFIGFILE + ".");
+        }
+        Properties prop = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            prop.load(in);
+        } catch (IllegalArgumentException ex) {
+            // A malformed unicode escape, maybe cut while being written.
+            throw new IOException(ex.getMessage(), ex);
+        }
+        return prop;
     }
 
     /**
@@ -93,7 +238,7 @@ public final class ConfigFileReader {
      *
      * @param id the property id.
      * @return the properties.
-     * @throws RedditReposterBot.exceptions.NoSuchProperty
+     * @throws NoSuchProperty
      */
     public String getProperties(String id) throws NoSuchProperty {
         if (!this.prop.containsKey(id)) {
@@ -103,4 +248,88 @@ public final class ConfigFileReader {
         }
         return this.prop.getProperty(id);
     }
+
+    /**
+     * Get the property for an id, or a default value if the property is not
+     * defined or left empty.
+     *
+     * @param id the property id.
+     * @param defaultValue the value to use if the property is not defined.
+     * @return the properties.
+     */
+    public String getProperties(String id, String defaultValue) {
+        String value = this.prop.getProperty(id);
+        return value == null || value.trim().isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Get an integer property.
+     *
+     * @param id the property id.
+     * @return the property.
+     *
+     * @throws NoSuchProperty
+     * @throws NumberFormatException
+     */
+    public int getInt(String id) throws NoSuchProperty {
+        return Integer.parseInt(getProperties(id).trim());
+    }
+
+    /**
+     * Get an integer property, or a default value if the property is not
+     * defined or left empty.
+     *
+     * @param id the property id.
+     * @param defaultValue the value to use if the property is not defined.
+     * @return the property.
+     *
+     * @throws NumberFormatException
+     */
+    public int getInt(String id, int defaultValue) {
+        String value = getProperties(id, null);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Get a long property, or a default value if the property is not defined
+     * or left empty.
+     *
+     * @param id the property id.
+     * @param defaultValue the value to use if the property is not defined.
+     * @return the property.
+     *
+     * @throws NumberFormatException
+     */
+    public long getLong(String id, long defaultValue) {
+        String value = getProperties(id, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Get a decimal property, or a default value if the property is not
+     * defined or left empty.
+     *
+     * @param id the property id.
+     * @param defaultValue the value to use if the property is not defined.
+     * @return the property.
+     *
+     * @throws NumberFormatException
+     */
+    public double getDouble(String id, double defaultValue) {
+        String value = getProperties(id, null);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    /**
+     * Get a Y/N property, or a default value if the property is not defined or
+     * left empty.
+     *
+     * @param id the property id.
+     * @param defaultValue the value to use if the property is not defined.
+     * @return if the property is Y.
+     */
+    public boolean getBoolean(String id, boolean defaultValue) {
+        String value = getProperties(id, null);
+        return value == null ? defaultValue : "Y".equals(value.trim());
+    }
 }
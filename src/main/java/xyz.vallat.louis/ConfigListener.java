@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+/**
+ * Told when the config file has been reloaded.
+ *
+ * @author louis
+ */
+public interface ConfigListener {
+
+    /**
+     * A new snapshot of the config file has been swapped in.
+     *
+     * @param previous the previous snapshot.
+     * @param current the new snapshot.
+     */
+    void configChanged(ConfigFileReader previous, ConfigFileReader current);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch the config file, and reload it when it changes. Editors often write a
+ * file in several steps, so the reload waits for the file to stay unchanged
+ * for a short while.
+ *
+ * @author louis
+ */
+final class ConfigWatcher implements Runnable {
+
+    /**
+     * How long the file must stay unchanged before being reloaded, in
+     * milliseconds.
+     */
+    private static final long QUIET_PERIOD = 500;
+
+    /**
+     * The watched config file.
+     */
+    private final File file;
+
+    /**
+     * The watch service of the config file folder.
+     */
+    private final WatchService watcher;
+
+    /**
+     * Main constructor.
+     *
+     * @param file the config file.
+     *
+     * @throws IOException
+     */
+    ConfigWatcher(File file) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.file.getParentFile().toPath().register(this.watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Start watching the config file on a daemon thread.
+     */
+    void start() {
+        Thread thread = new Thread(this, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("[*] Watching " + this.file + " for changes.");
+    }
+
+    /**
+     * Wait for the changes of the config file, and reload it.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!isConfigChanged(this.watcher.take())) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = this.watcher.poll(QUIET_PERIOD,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    isConfigChanged(key);
+                }
+                MetricsRegistry.getSingleton().counter("config_reloads_total",
+                        "result", ConfigFileReader.reload()
+                        ? "changed" : "unchanged").increment();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // The watcher has been closed.
+        }
+    }
+
+    /**
+     * Read the events of a watch key, and reset it.
+     *
+     * @param key the key.
+     * @return if the config file is one of the changed files.
+     */
+    private boolean isConfigChanged(WatchKey key) {
+        boolean changed = false;
+        Path name = this.file.toPath().getFileName();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || name.equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Stop watching the config file.
+     */
+    void close() {
+        try {
+            this.watcher.close();
+        } catch (IOException ex) {
+            System.err.println("[!] Could not stop watching the config file: "
+                    + ex.getMessage());
+        }
+    }
+}
@@ -16,25 +16,46 @@
  */
 package xyz.vallat.louis;
 
+import xyz.vallat.louis.databaseHandler.DatabaseConnection;
+import xyz.vallat.louis.databaseHandler.HammingIndex;
+import xyz.vallat.louis.databaseHandler.Outbox;
+import xyz.vallat.louis.databaseHandler.OutboxEntry;
+import xyz.vallat.louis.databaseHandler.PostsTable;
+import xyz.vallat.louis.socialMediaHandler.PublicationDispatcher;
+import xyz.vallat.louis.socialMediaHandler.PublicationResult;
 import xyz.vallat.louis.socialMediaHandler.SocialMediaPoster;
 import xyz.vallat.louis.redditHandler.RedditExtractor;
+import xyz.vallat.louis.redditHandler.SubReddit;
+import xyz.vallat.louis.httpHandler.CircuitBreaker;
+import xyz.vallat.louis.httpHandler.HttpClient;
+import xyz.vallat.louis.httpHandler.RecordingHttpClient;
+import xyz.vallat.louis.httpHandler.ReplayHttpClient;
+import xyz.vallat.louis.httpHandler.RetryPolicy;
+import xyz.vallat.louis.exceptions.CircuitOpen;
 import xyz.vallat.louis.exceptions.NoSuchFile;
 import xyz.vallat.louis.exceptions.NoSuchOrder;
 import xyz.vallat.louis.exceptions.NotSufficientRights;
 import xyz.vallat.louis.exceptions.NoSuchProperty;
 import xyz.vallat.louis.redditHandler.RedditPost;
+import xyz.vallat.louis.mediaHandler.ImageProcessor;
+import xyz.vallat.louis.mediaHandler.MediaCache;
+import xyz.vallat.louis.mediaHandler.MediaDownloader;
+import xyz.vallat.louis.mediaHandler.MediaFile;
+import xyz.vallat.louis.metricsHandler.MetricsExporter;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Singleton Hypervisor. This is the object that does everything. So we want it
@@ -55,24 +76,31 @@ public class Hypervisor {
     private final String sqliteDatabase;
 
     /**
-     * SQLITE table name.
+     * Minimum of all the social medias text size.
      */
-    private final String tableName;
+    private final int maxLength;
 
     /**
-     * Delay between two scans, in seconds.
+     * The subreddits to extract info from.
      */
-    private final int delay;
+    private final ArrayList<SubredditMonitor> monitors;
 
     /**
-     * Minimum of all the social medias text size.
+     * Scheduler polling all the subreddits.
      */
-    private final int maxLength;
+    private final ScheduledExecutorService scheduler;
 
     /**
-     * Subreddit to extract info from.
+     * Pool running the scans of the subreddits on virtual threads, or null
+     * when they run on the scheduler.
      */
-    private final String subreddit;
+    private final ExecutorService pollers;
+
+    /**
+     * The recorded Reddit responses being replayed, or null when Reddit is
+     * polled.
+     */
+    private final ReplayHttpClient replay;
 
     /**
      * The singleton.
@@ -84,15 +112,52 @@ public class Hypervisor {
      */
     private final ArrayList<SocialMediaPoster> socialMedias;
 
+    /**
+     * Download the medias of the posts.
+     */
+    private final MediaDownloader mediaDownloader;
+
+    /**
+     * Publish the posts on all the social medias at the same time.
+     */
+    private final PublicationDispatcher dispatcher;
+
     /**
      * Connection to the SQLITE database.
      */
-    private Connection connexion;
+    private final DatabaseConnection database;
+
+    /**
+     * The posts waiting to be published.
+     */
+    private final Outbox outbox;
+
+    /**
+     * Publish the posts of the outbox.
+     */
+    private final OutboxPublisher publisher;
 
     /**
-     * RedditExtractor.
+     * How many posts can wait in the outbox before the scans are skipped, or
+     * 0 for no limit.
      */
-    private final RedditExtractor myRedditExtractor;
+    private final int maxPending;
+
+    /**
+     * How long the finished posts stay in the outbox, in days, or 0 to keep
+     * them forever.
+     */
+    private final int outboxRetention;
+
+    /**
+     * Delay between two exports of the metrics, in seconds.
+     */
+    private final int metricsInterval;
+
+    /**
+     * Reload the config file when it changes, null if it is never reloaded.
+     */
+    private final ConfigWatcher configWatcher;
 
     /**
      * Private constructor so nobody except this obect can build this object.
@@ -100,29 +165,230 @@ public class Hypervisor {
     private Hypervisor()
             throws NotSufficientRights, ClassNotFoundException,
             SQLException, IOException, NoSuchFile, NoSuchProperty, NoSuchOrder {
-        Class.forName("org.sqlite.JDBC");
         System.out.println("[+] Creating Hypervisor.");
-        ConfigFileReader reader = new ConfigFileReader();
-        this.subreddit = reader.getProperties("subreddit");
-        this.tableName = reader.getProperties("subreddit");
-        this.delay = Integer.valueOf(reader.getProperties("delay"));
+        ConfigFileReader reader = ConfigFileReader.getSingleton();
+        if (Workers.useVirtualThreads(
+                reader.getBoolean("virtual_threads", false))) {
+            System.out.println("[*] The network work runs on virtual "
+                    + "threads.");
+        }
         this.sqliteDatabase = reader.getProperties("sqlite_db_name");
         this.socialMedias = new ArrayList<>();
         this.workingDirectory = reader.getProperties("working_directory");
         setupTheBotDirectory();
-        this.connexion = DriverManager.getConnection("jdbc:sqlite:"
-                    + this.workingDirectory + File.separator
-                    + this.sqliteDatabase);
-        this.myRedditExtractor = new RedditExtractor(subreddit);
-        if ("Y".equals(reader.getProperties("clear_database"))) {
-            clearDatabase();
+        File mediaDirectory = new File(this.workingDirectory, "media");
+        this.dispatcher = new PublicationDispatcher(
+                reader.getInt("publish_threads", 4),
+                reader.getInt("publish_timeout", 120),
+                new ImageProcessor(
+                        new MediaCache(new File(mediaDirectory, "processed"),
+                                reader.getLong("processed_cache_max_bytes",
+                                        134217728)),
+                        reader,
+                        reader.getInt("image_workers", 2)));
+        int connectTimeout = reader.getInt("http_connect_timeout", 10);
+        int readTimeout = reader.getInt("http_read_timeout", 30);
+        int maxConnections = reader.getInt("http_max_connections", 8);
+        HttpClient client = new HttpClient(connectTimeout, readTimeout,
+                maxConnections);
+        String archiveMode = reader.getProperties("reddit_archive", "off");
+        File archives = new File(reader.getProperties("reddit_archive_path",
+                this.workingDirectory + File.separator + "recordings"));
+        HttpClient redditClient = client;
+        double speedup = 1;
+        if ("record".equals(archiveMode)) {
+            RecordingHttpClient recorder = new RecordingHttpClient(
+                    connectTimeout, readTimeout, maxConnections, archives);
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(recorder::close));
+            redditClient = recorder;
+            this.replay = null;
+        } else if ("replay".equals(archiveMode)) {
+            speedup = Math.max(0, reader.getDouble("replay_speedup", 1));
+            this.replay = new ReplayHttpClient(archives, speedup);
+            redditClient = this.replay;
+        } else {
+            this.replay = null;
+        }
+        this.mediaDownloader = new MediaDownloader(
+                new MediaCache(mediaDirectory,
+                        reader.getLong("media_cache_max_bytes", 268435456)),
+                client);
+        File databaseFile = new File(this.workingDirectory,
+                this.sqliteDatabase);
+        if (this.replay != null) {
+            // A replay must neither fill nor read the live posts and outbox,
+            // so it starts from an empty database of its own every time.
+            databaseFile = new File(archives, "replay.db");
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Files.deleteIfExists(new File(databaseFile.getPath() + suffix)
+                        .toPath());
+            }
+            System.out.println("[*] The replay uses the database "
+                    + databaseFile + ".");
+        }
+        this.database = new DatabaseConnection(databaseFile.getPath());
+        this.maxLength = reader.getInt("max_text_length");
+        this.metricsInterval = reader.getInt("metrics_interval", 60);
+        boolean clear = "Y".equals(reader.getProperties("clear_database"));
+        this.outbox = new Outbox(this.database);
+        this.outbox.create();
+        if (clear) {
+            this.outbox.clear();
+        }
+        int duplicateDistance = reader.getInt("duplicate_max_distance", 6);
+        HammingIndex images = null;
+        if (duplicateDistance >= 0) {
+            images = new HammingIndex(duplicateDistance);
+            this.outbox.loadImageHashes(images);
+            System.out.println("[*] " + images.size()
+                    + " image hashes loaded.");
+        }
+        this.publisher = new OutboxPublisher(this.outbox, this, images,
+                reader.getInt("pipeline.download.workers", 4),
+                reader.getInt("pipeline.hash.workers",
+                        Runtime.getRuntime().availableProcessors()),
+                reader.getInt("pipeline.publish.workers", 2),
+                reader.getInt("pipeline.queue_capacity", 16),
+                reader.getInt("publish_max_attempts", 5),
+                reader.getInt("publish_retry_delay", 60));
+        // Nothing is published during a replay, so the outbox only grows.
+        this.maxPending = this.replay == null
+                ? Math.max(0, reader.getInt("outbox_max_pending", 1000)) : 0;
+        this.outboxRetention = Math.max(0,
+                reader.getInt("outbox_retention_days", 30));
+        int seenPostsCacheSize = reader.getInt("seen_posts_cache_size", 10000);
+        RetryPolicy redditRetryPolicy = new RetryPolicy(
+                reader.getInt("retry_max_attempts", 5),
+                reader.getLong("retry_base_delay", 1)
+                * 1000,
+                reader.getLong("retry_max_delay", 60)
+                * 1000,
+                new CircuitBreaker("reddit",
+                        reader.getInt("circuit_breaker_threshold", 5),
+                        reader.getInt("circuit_breaker_delay", 120)));
+        this.monitors = new ArrayList<>();
+        for (String subreddit : reader.getProperties("subreddit").split(",")) {
+            subreddit = subreddit.trim();
+            if (subreddit.isEmpty()) {
+                continue;
+            }
+            RedditExtractor extractor = new RedditExtractor(subreddit,
+                    redditClient, redditRetryPolicy);
+            try {
+                if (!extractor.checkExists(true)) {
+                    System.err.println("[!] This subreddit (" + subreddit
+                            + ") does not exist. Skipping it.");
+                    continue;
+                }
+            } catch (MalformedURLException ex) {
+                System.err.println("[!] " + ex.getMessage() + " Skipping it.");
+                continue;
+            } catch (IOException | CircuitOpen ex) {
+                // Reddit may just be down, the first scan checks it again.
+                System.err.println("[!] Could not check if /r/" + subreddit
+                        + " exists: " + ex.getMessage() + " Checking it again "
+                        + "at its first scan.");
+            }
+            PostsTable posts = new PostsTable(this.database, subreddit);
+            if (clear) {
+                System.out.println("[*] Clearing the database for /r/"
+                        + subreddit + ".");
+                posts.clear();
+                System.out.println(
+                        "[*] The database has been cleared successfully.");
+            } else {
+                posts.create();
+            }
+            posts.load(seenPostsCacheSize);
+            int[] delays = readDelays(reader, subreddit);
+            this.monitors.add(new SubredditMonitor(subreddit,
+                    new AdaptivePollingPolicy(delays[0], delays[1], delays[2],
+                            extractor.getSubReddit().getLimit()),
+                    extractor, posts, this, speedup));
+        }
+        if (this.monitors.isEmpty()) {
+            throw new NoSuchProperty(
+                    "[!] No existing subreddit to monitor. Define at least one "
+                    + "in the subreddit property and try again.");
+        }
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(
+                reader.getInt("scheduler_threads",
+                        Math.min(this.monitors.size(), 8)));
+        // Once shut down, the scans waiting for their next cycle are dropped.
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        // A scan rescheduled by a config reload leaves the queue at once.
+        pool.setRemoveOnCancelPolicy(true);
+        this.scheduler = pool;
+        this.pollers = Workers.isVirtual()
+                ? Workers.newVirtualPool("poller",
+                        reader.getInt("poll_concurrency",
+                                this.monitors.size()))
+                : null;
+        if (reader.getBoolean("config_hot_reload", true)) {
+            ConfigFileReader.addListener(this::configChanged);
+            this.configWatcher = new ConfigWatcher(
+                    ConfigFileReader.getConfigFile());
+        } else {
+            this.configWatcher = null;
         }
-        this.maxLength = Integer.valueOf(reader.getProperties("max_text_length"));
-        load();
-        this.connexion.close();
         System.out.println("[+] Hypervisor created successfully.");
     }
 
+    /**
+     * Read the delays of a subreddit: its initial, minimum and maximum delays,
+     * in seconds. Every delay can be set for this subreddit only with the
+     * subreddit.&lt;name&gt;.delay, .min_delay and .max_delay properties.
+     *
+     * @param reader the config.
+     * @param subreddit subreddit's name.
+     * @return the initial, minimum and maximum delays.
+     *
+     * @throws NoSuchProperty
+     */
+    private static int[] readDelays(ConfigFileReader reader, String subreddit)
+            throws NoSuchProperty {
+        String prefix = "subreddit." + subreddit + ".";
+        int delay = reader.getInt(prefix + "delay", reader.getInt("delay"));
+        int minDelay = reader.getInt(prefix + "min_delay",
+                reader.getInt("min_delay", Math.max(1, delay / 2)));
+        int maxDelay = reader.getInt(prefix + "max_delay",
+                reader.getInt("max_delay", delay * 4));
+        return new int[]{delay, minDelay, maxDelay};
+    }
+
+    /**
+     * Apply a reloaded config file to the subreddits being polled. The
+     * delays and the listing limit take effect at once, the other settings
+     * at the next start.
+     *
+     * @param previous the previous config.
+     * @param current the reloaded config.
+     */
+    private void configChanged(ConfigFileReader previous,
+            ConfigFileReader current) {
+        for (SubredditMonitor monitor : this.monitors) {
+            try {
+                int[] delays = readDelays(current, monitor.getName());
+                int limit = SubReddit.getLimit(current, monitor.getName());
+                if (Arrays.equals(delays, readDelays(previous,
+                        monitor.getName()))
+                        && limit == SubReddit.getLimit(previous,
+                                monitor.getName())) {
+                    continue;
+                }
+                monitor.reconfigure(delays[0], delays[1], delays[2], limit);
+                System.out.println("[+] /r/" + monitor.getName()
+                        + " is now polled every " + delays[0] + " seconds ("
+                        + delays[1] + " to " + delays[2] + "), "
+                        + limit + " posts at a time.");
+            } catch (NoSuchProperty | RuntimeException ex) {
+                System.err.println("[!] Could not apply the new settings to /r/"
+                        + monitor.getName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Get the Singleton Hypervisor instance.
      *
@@ -146,253 +412,239 @@ public class Hypervisor {
     }
 
     /**
-     * Main loop for the program. This is where everything happens.
+     * Main loop for the program. This is where everything happens. Every
+     * subreddit is polled on the scheduler, and this method only returns when
+     * the scheduler is shut down.
      *
-     * @throws ClassNotFoundException
-     * @throws SQLException
      * @throws InterruptedException
      */
-    public void run()
-            throws ClassNotFoundException, SQLException,
-            InterruptedException {
+    public void run() throws InterruptedException {
         System.out.println("[+] Hypervisor is now running.");
-        for (;;) {
-            this.connexion = DriverManager.getConnection("jdbc:sqlite:"
-                    + this.workingDirectory + File.separator
-                    + this.sqliteDatabase);
-            for (RedditPost post : myRedditExtractor.getRedditPosts()) {
-                computeRedditPost(post);
+        for (SubredditMonitor monitor : this.monitors) {
+            System.out.println("[*] Monitoring /r/" + monitor.getName()
+                    + " every " + monitor.getPolling().getDelay()
+                    + " seconds.");
+            monitor.start(this.scheduler, this.pollers);
+        }
+        if (this.configWatcher != null) {
+            this.configWatcher.start();
+        }
+        if (this.replay == null) {
+            this.publisher.start(this.scheduler);
+        } else {
+            System.out.println("[*] Replaying Reddit, nothing is published.");
+            this.scheduler.scheduleWithFixedDelay(() -> {
+                if (this.replay.isFinished()) {
+                    System.out.println("[+] The replay is over.");
+                    this.scheduler.shutdown();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.database.checkHealth();
+            } catch (SQLException ex) {
+                System.err.println("[!] SQLException: " + ex.getMessage());
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+        if (this.outboxRetention > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::pruneOutbox, 1, 60,
+                    TimeUnit.MINUTES);
+        }
+        MetricsExporter exporter
+                = new MetricsExporter(MetricsRegistry.getSingleton());
+        File metricsDirectory = new File(this.workingDirectory);
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                exporter.writeTo(metricsDirectory);
+            } catch (IOException ex) {
+                System.err.println("[!] Could not export the metrics: "
+                        + ex.getMessage());
             }
-            this.connexion.close();
-            System.out.println(
-                    "[*] Hypervisor is waiting for "
-                    + this.delay + " seconds.");
-            Thread.sleep(this.delay * 1000);
+        }, this.metricsInterval, this.metricsInterval, TimeUnit.SECONDS);
+        while (!this.scheduler.awaitTermination(1, TimeUnit.DAYS)) {
+            // Keep waiting, the subreddits are polled on the scheduler.
+        }
+        if (this.pollers != null) {
+            this.pollers.shutdown();
+            this.pollers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        try {
+            exporter.writeTo(metricsDirectory);
+        } catch (IOException ex) {
+            System.err.println("[!] Could not export the metrics: "
+                    + ex.getMessage());
         }
     }
 
     /**
-     * Load all the reddit posts from the database.
-     *
-     * @throws ClassNotFoundException
-     * @throws SQLException
+     * Stop scanning the subreddits and publishing the posts. The run returns
+     * once the current cycles are over.
      */
-    private void load() throws ClassNotFoundException, SQLException {
-        createTable();
-        PreparedStatement recherche = this.connexion.prepareStatement(
-                "SELECT COUNT(id) AS cpt FROM " + this.tableName + ";");
-        try (ResultSet res = recherche.executeQuery()) {
-            res.next();
-            System.out.println("[*] " + res.getInt("cpt") + " posts in database.");
+    public void shutdown() {
+        System.out.println("[*] Shutting the Hypervisor down.");
+        this.scheduler.shutdown();
+        if (this.pollers != null) {
+            this.pollers.shutdown();
         }
+        if (this.configWatcher != null) {
+            this.configWatcher.close();
+        }
+        this.publisher.shutdown();
+        this.dispatcher.shutdown();
     }
 
     /**
-     * Clear the database by dropping it.
+     * Check if a given reddit post can be shared.
      *
-     * @throws ClassNotFoundException
-     * @throws SQLException
+     * @param r the reddit post.
+     * @return if the post can be shared.
      */
-    private void clearDatabase() throws ClassNotFoundException, SQLException {
-        System.out.println("[*] Clearing the database.");
-        PreparedStatement stmt = connexion.prepareStatement(""
-                + "DROP TABLE IF EXISTS " + this.tableName + ";"
-        );
-        stmt.execute();
-        createTable();
-        System.out.println("[*] The database has been cleared successfully.");
+    boolean isShareable(RedditPost r) {
+        return !r.isQuarantine() && r.hasMediaUrl();
     }
 
     /**
-     * Add a given reddit post to the database.
+     * Download a media, unless it is already in the cache. It is pinned in
+     * the cache until it is released.
      *
-     * @param current a given reddit post to add to the database
+     * @param url the media url.
+     * @return the media.
      *
-     * @throws ClassNotFoundException
-     * @throws SQLException
+     * @throws IOException
      */
-    private void addRedditPostToDatabase(RedditPost current)
-            throws ClassNotFoundException, SQLException {
-        createTable();
-        if (!isInDatabase(current.getPostId())) {
-            PreparedStatement ajout = this.connexion.prepareStatement(
-                    "INSERT INTO " + this.tableName
-                    + "("
-                    + "postType, "
-                    + "postId, "
-                    + "title, "
-                    + "quarantine, "
-                    + "score, "
-                    + "postHint, "
-                    + "crosspostable, "
-                    + "over18, "
-                    + "author, "
-                    + "permalink, "
-                    + "spoiler, "
-                    + "url, "
-                    + "shared"
-                    + ") "
-                    + "VALUES "
-                    + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);"
-            );
-            ajout.setString(1,
-                    current.isImage() ? "image"
-                    : current.isLink() ? "link"
-                    : current.isText() ? "text"
-                    : "video");
-            ajout.setString(2, current.getPostId());
-            ajout.setString(3, current.getTitle());
-            ajout.setBoolean(4, current.isQuarantine());
-            ajout.setDouble(5, current.getScore());
-            ajout.setString(6, current.getPostHint());
-            ajout.setBoolean(7, current.isCrosspostable());
-            ajout.setBoolean(8, current.isOver18());
-            ajout.setString(9, current.getAuthor());
-            ajout.setString(10, current.getPermalink());
-            ajout.setBoolean(11, current.isSpoiler());
-            ajout.setString(12, current.getUrl());
-            ajout.setBoolean(13, true);
-            ajout.execute();
+    MediaFile downloadMedia(String url) throws IOException {
+        return this.mediaDownloader.download(url);
+    }
 
-        }
+    /**
+     * Pin an already downloaded media, so it stays in the cache while it is
+     * used.
+     *
+     * @param path path to the media.
+     * @return if the media is still in the cache.
+     */
+    boolean pinMedia(String path) {
+        return this.mediaDownloader.pin(path);
     }
 
     /**
-     * Check if a post is in database.
+     * Release a media pinned by {@link #downloadMedia} or {@link #pinMedia}.
      *
-     * @param postId the post id
-     * @return if the post is in the database
+     * @param path path to the media.
+     */
+    void releaseMedia(String path) {
+        this.mediaDownloader.release(path);
+    }
+
+    /**
+     * Publish a post of the outbox on some social medias.
      *
-     * @throws SQLException
-     * @throws ClassNotFoundException
+     * @param entry the post.
+     * @param imagePath path to the post's media.
+     * @param platforms the social medias.
+     * @param posted the references of the posts already published whose
+     * reply is missing, by social media name.
+     * @return the result for every social media, by social media name.
      */
-    private boolean isInDatabase(String postId)
-            throws SQLException, ClassNotFoundException {
-        PreparedStatement recherche = this.connexion.prepareStatement(
-                "SELECT * FROM " + this.tableName + " "
-                + "WHERE postId = '" + postId + "'");
-        try (ResultSet resultats = recherche.executeQuery()) {
-            return resultats.next();
+    Map<String, PublicationResult> publish(OutboxEntry entry,
+            String imagePath, List<SocialMediaPoster> platforms,
+            Map<String, Long> posted) {
+        Map<String, PublicationResult> results = this.dispatcher.publish(
+                platforms, formatPost(entry.getTitle()), imagePath,
+                formatPost("from /u/" + entry.getAuthor() + " "
+                        + "on /r/" + entry.getSubreddit() + " "
+                        + "at link : https://www.reddit.com"
+                        + entry.getPermalink()), posted);
+        for (PublicationResult result : results.values()) {
+            if (result.isSuccess()) {
+                System.out.println("[+] Post \"" + entry.getTitle()
+                        + "\" has been shared successfully on "
+                        + result.getSocialMediaName() + ".");
+            } else if (result.isUnknown()) {
+                System.err.println("[!] Post \"" + entry.getTitle()
+                        + "\" timed out on " + result.getSocialMediaName()
+                        + " while being sent. It may be published, so it "
+                        + "won't be sent again.");
+            } else if (result.isRateLimited()) {
+                System.out.println("[*] Post \"" + entry.getTitle()
+                        + "\" is postponed on "
+                        + result.getSocialMediaName() + ": "
+                        + result.getError() + ".");
+            } else {
+                System.err.println("[!] Post \"" + entry.getTitle()
+                        + "\" couldn't be shared on "
+                        + result.getSocialMediaName() + ": "
+                        + result.getError() + ".");
+            }
         }
+        return results;
     }
 
     /**
-     * Create our working table if it doesn't exists yet.
+     * Get the outbox.
      *
-     * @throws SQLException
-     * @throws ClassNotFoundException
+     * @return the outbox.
      */
-    private void createTable() throws SQLException, ClassNotFoundException {
-        PreparedStatement stmt = connexion.prepareStatement(""
-                + "CREATE TABLE IF NOT EXISTS " + this.tableName + " "
-                + "("
-                + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
-                + "postType TEXT, "
-                + "postId TEXT UNIQUE, "
-                + "title TEXT, "
-                + "quarantine BOOLEAN, "
-                + "score DOUBLE, "
-                + "postHint TEXT, "
-                + "crosspostable BOOLEAN, "
-                + "over18 BOOLEAN, "
-                + "author TEXT, "
-                + "permalink TEXT, "
-                + "spoiler BOOLEAN, "
-                + "url TEXT, "
-                + "shared BOOLEAN"
-                + ");"
-        );
-        stmt.execute();
+    Outbox getOutbox() {
+        return outbox;
     }
 
     /**
-     * Compute a given reddit post.
+     * Get the outbox publisher.
      *
-     * @param r the reddit post to compute.
-     *
-     * @throws ClassNotFoundException
-     * @throws SQLException
+     * @return the publisher.
      */
-    private void computeRedditPost(RedditPost r)
-            throws SQLException, ClassNotFoundException {
-        if (!isInDatabase(r.getPostId()) && !r.isQuarantine() && r.hasMediaUrl()) {
-            System.out.println(
-                    "[*] Computing the post \"" + r.getTitle() + "\"");
-            addRedditPostToDatabase(r);
-            String fileName = saveImage(r.getUrl());
-            socialMedias.forEach((s) -> {
-                long postRef = s.postImage(
-                        formatPost(r.getTitle()), fileName);
-                if (postRef != 0 && postRef != -1) {
-                    s.replyText(formatPost("from /u/" + r.getAuthor() + " "
-                            + "on /r/" + this.subreddit + " "
-                            + "at link : https://www.reddit.com"
-                            + r.getPermalink()), postRef);
-                }
-            });
-            deleteFile(fileName);
-            System.out.println("[+] Post \""
-                    + r.getTitle()
-                    + "\" has been shared successfully.");
-        }
+    OutboxPublisher getPublisher() {
+        return publisher;
     }
 
     /**
-     * Format a given text for being posted on the different social networks.
+     * Check if the publication falls too far behind, with more posts waiting
+     * in the outbox than allowed. The scans are skipped until it catches up.
      *
-     * @param text the text to format
-     * @return the formatted text
+     * @return if the outbox is backed up.
      */
-    private String formatPost(String text) {
-        return text.length() >= this.maxLength
-                ? text.substring(0, this.maxLength - 4) + "..."
-                : text;
+    boolean isBackedUp() {
+        if (this.maxPending == 0) {
+            return false;
+        }
+        try {
+            return this.outbox.pending() >= this.maxPending;
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Save Image from URL. Modified version of the code that can be found at
-     * https://www.programcreek.com/2012/12/download-image-from-url-in-java/
-     *
-     * @param imageUrl the image URL.
+     * Remove the finished posts older than the retention from the outbox.
      */
-    private String saveImage(String imageUrl) {
-        System.out.println("[+] Dowloading image " + imageUrl + ".");
+    private void pruneOutbox() {
         try {
-            URL url = new URL(imageUrl);
-            String fileName = url.getFile();
-            String destName = workingDirectory + fileName.substring(
-                    fileName.lastIndexOf("/"), fileName.lastIndexOf("?"));
-            InputStream is = url.openStream();
-            OutputStream os = new FileOutputStream(destName);
-
-            byte[] b = new byte[2048];
-            int length;
-
-            while ((length = is.read(b)) != -1) {
-                os.write(b, 0, length);
+            int pruned = this.outbox.prune(System.currentTimeMillis()
+                    - TimeUnit.DAYS.toMillis(this.outboxRetention));
+            if (pruned > 0) {
+                System.out.println("[*] " + pruned
+                        + " outbox entries pruned.");
+                MetricsRegistry.getSingleton()
+                        .counter("outbox_pruned_total").add(pruned);
             }
-            is.close();
-            os.close();
-
-            System.out.println(
-                    "[+] Image " + destName + " dowloaded successfully.");
-            return destName;
-        } catch (IOException ex) {
-            System.err.println("[!] IOException : " + ex.getMessage());
-            System.exit(1);
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
         }
-        return null;
     }
 
     /**
-     * Delete a file.
+     * Format a given text for being posted on the different social networks.
      *
-     * @param filePath the path to the file we want to delete.
+     * @param text the text to format
+     * @return the formatted text
      */
-    private void deleteFile(String filePath) {
-        File f = new File(filePath);
-        f.delete();
-        System.out.println("[*] File " + filePath + " deleted.");
+    private String formatPost(String text) {
+        return text.length() >= this.maxLength
+                ? text.substring(0, this.maxLength - 4) + "..."
+                : text;
     }
 
     /**
@@ -438,4 +690,13 @@ public class Hypervisor {
     public void addSocialMedia(SocialMediaPoster s) {
         this.socialMedias.add(s);
     }
+
+    /**
+     * Get the social medias to post content to.
+     *
+     * @return the social medias.
+     */
+    List<SocialMediaPoster> getSocialMedias() {
+        return socialMedias;
+    }
 }
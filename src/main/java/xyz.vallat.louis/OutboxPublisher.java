@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import xyz.vallat.louis.databaseHandler.HammingIndex;
+import xyz.vallat.louis.databaseHandler.Outbox;
+import xyz.vallat.louis.databaseHandler.OutboxEntry;
+import xyz.vallat.louis.mediaHandler.DifferenceHash;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import xyz.vallat.louis.socialMediaHandler.PublicationResult;
+import xyz.vallat.louis.socialMediaHandler.SocialMediaPoster;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drain the outbox. The due entries go through a pipeline of three stages,
+ * each with its own workers and a bounded queue: the download of their media,
+ * the hash of their image, and the publication on the social medias they
+ * haven't been published on yet. When a stage falls behind, the stages before
+ * it wait, and the outbox is only read when the first stage has room. A
+ * failed entry is tried again later, with a delay doubling at every attempt.
+ * The scans only fill the outbox, so they never wait for a publication. An
+ * image already published with another post, even from another subreddit, is
+ * recognized by its perceptual hash and skipped.
+ *
+ * @author louis
+ */
+final class OutboxPublisher {
+
+    /**
+     * Delay between two looks at the outbox when nobody wakes the publisher
+     * up, in seconds.
+     */
+    private static final int POLL_INTERVAL = 5;
+
+    /**
+     * The outbox.
+     */
+    private final Outbox outbox;
+
+    /**
+     * The hypervisor downloading the medias and publishing the posts.
+     */
+    private final Hypervisor hypervisor;
+
+    /**
+     * Hashes of the images already published, or null to publish the
+     * duplicates too.
+     */
+    private final HammingIndex images;
+
+    /**
+     * Download the media of the entries.
+     */
+    private final PipelineStage<Job> download;
+
+    /**
+     * Hash the images of the entries, and skip the duplicates.
+     */
+    private final PipelineStage<Job> hash;
+
+    /**
+     * Publish the entries.
+     */
+    private final PipelineStage<Job> publish;
+
+    /**
+     * Ids of the entries being published.
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The social medias an entry has been published on without the outbox
+     * recording it, by entry id. They are not published on again.
+     */
+    private final Map<Long, Set<String>> unrecorded
+            = new ConcurrentHashMap<>();
+
+    /**
+     * How many attempts before an entry is abandoned.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Delay before the first retry of an entry, in milliseconds.
+     */
+    private final long retryDelay;
+
+    /**
+     * Scheduler looking at the outbox.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Main constructor.
+     *
+     * @param outbox the outbox.
+     * @param hypervisor the hypervisor publishing the posts.
+     * @param images hashes of the images already published, or null to
+     * publish the duplicates too.
+     * @param downloadWorkers how many medias are downloaded at the same
+     * time.
+     * @param hashWorkers how many images are hashed at the same time.
+     * @param publishWorkers how many entries are published at the same time.
+     * @param queueCapacity how many entries can wait before every stage.
+     * @param maxAttempts how many attempts before an entry is abandoned.
+     * @param retryDelay delay before the first retry of an entry, in seconds.
+     */
+    OutboxPublisher(Outbox outbox, Hypervisor hypervisor, HammingIndex images,
+            int downloadWorkers, int hashWorkers, int publishWorkers,
+            int queueCapacity, int maxAttempts, int retryDelay) {
+        this.outbox = outbox;
+        this.hypervisor = hypervisor;
+        this.images = images;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay * 1000L;
+        this.download = new PipelineStage<>("download", downloadWorkers,
+                queueCapacity, true, this::download);
+        this.hash = new PipelineStage<>("hash", hashWorkers, queueCapacity,
+                false, this::hash);
+        this.publish = new PipelineStage<>("publish", publishWorkers,
+                queueCapacity, true, this::publish);
+    }
+
+    /**
+     * Start draining the outbox, beginning with the entries left by the
+     * previous run.
+     *
+     * @param scheduler the scheduler looking at the outbox.
+     */
+    void start(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        for (OutboxEntry.State state : OutboxEntry.State.values()) {
+            metrics.gauge("outbox_entries", () -> {
+                try {
+                    return this.outbox.count().get(state);
+                } catch (SQLException ex) {
+                    return -1;
+                }
+            }, "state", state.name().toLowerCase());
+        }
+        metrics.gauge("outbox_in_flight", this.inFlight::size);
+        if (this.images != null) {
+            metrics.gauge("image_hash_index_size", this.images::size);
+        }
+        this.download.start();
+        this.hash.start();
+        this.publish.start();
+        scheduler.scheduleWithFixedDelay(this::poll, 0, POLL_INTERVAL,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Look at the outbox now, because entries have just been added.
+     */
+    void wakeUp() {
+        if (this.scheduler != null && !this.scheduler.isShutdown()) {
+            this.scheduler.execute(this::poll);
+        }
+    }
+
+    /**
+     * Hand the due entries to the first stage, as long as it has room. The
+     * other entries wait in the outbox.
+     */
+    private void poll() {
+        int room = this.download.remainingCapacity();
+        if (room == 0) {
+            return;
+        }
+        List<OutboxEntry> due;
+        try {
+            due = this.outbox.due(room + this.inFlight.size());
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
+            return;
+        }
+        for (OutboxEntry entry : due) {
+            if (this.inFlight.add(entry.getId())
+                    && !this.download.offer(new Job(entry))) {
+                this.inFlight.remove(entry.getId());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Download the media of an entry, unless it is already there, and hand
+     * the entry to the next stage.
+     *
+     * @param job the entry.
+     *
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    private void download(Job job) throws SQLException, InterruptedException {
+        boolean handedOver = false;
+        try {
+            OutboxEntry entry = job.entry;
+            System.out.println("[*] Computing the post \"" + entry.getTitle()
+                    + "\"");
+            String mediaPath = entry.getMediaPath();
+            if (mediaPath != null && this.hypervisor.pinMedia(mediaPath)) {
+                job.mediaPath = mediaPath;
+            } else {
+                try {
+                    job.mediaPath = this.hypervisor
+                            .downloadMedia(entry.getUrl()).getPath();
+                } catch (IOException ex) {
+                    failed(entry, "its media " + entry.getUrl()
+                            + " couldn't be downloaded: " + ex);
+                    return;
+                }
+                this.outbox.mediaFetched(entry, job.mediaPath);
+            }
+            if (this.images != null && entry.getImageHash() == null) {
+                this.hash.put(job);
+            } else {
+                this.publish.put(job);
+            }
+            handedOver = true;
+        } finally {
+            if (!handedOver) {
+                finish(job);
+            }
+        }
+    }
+
+    /**
+     * Hash the image of an entry, and hand it to the publication unless it is
+     * a duplicate.
+     *
+     * @param job the entry.
+     *
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    private void hash(Job job) throws SQLException, InterruptedException {
+        boolean handedOver = false;
+        try {
+            if (!isDuplicate(job.entry, job.mediaPath)) {
+                this.publish.put(job);
+                handedOver = true;
+            }
+        } finally {
+            if (!handedOver) {
+                finish(job);
+            }
+        }
+    }
+
+    /**
+     * Publish an entry on the social medias it hasn't been published on yet.
+     *
+     * @param job the entry.
+     *
+     * @throws SQLException
+     */
+    private void publish(Job job) throws SQLException {
+        try {
+            publish(job.entry, job.mediaPath);
+        } finally {
+            finish(job);
+        }
+    }
+
+    /**
+     * Forget an entry which left the pipeline, release its media, and look
+     * for the next ones.
+     *
+     * @param job the entry.
+     */
+    private void finish(Job job) {
+        if (job.mediaPath != null) {
+            this.hypervisor.releaseMedia(job.mediaPath);
+        }
+        this.inFlight.remove(job.entry.getId());
+        wakeUp();
+    }
+
+    /**
+     * Publish an entry on the social medias it hasn't been published on yet.
+     *
+     * @param entry the entry.
+     * @param mediaPath path to its media.
+     *
+     * @throws SQLException
+     */
+    private void publish(OutboxEntry entry, String mediaPath)
+            throws SQLException {
+        Set<String> published = this.outbox.getPublications(entry);
+        published.addAll(this.unrecorded.getOrDefault(entry.getId(),
+                Collections.emptySet()));
+        List<SocialMediaPoster> remaining = new ArrayList<>();
+        for (SocialMediaPoster s : this.hypervisor.getSocialMedias()) {
+            if (!published.contains(s.getSocialMediaName())) {
+                remaining.add(s);
+            }
+        }
+        StringBuilder errors = new StringBuilder();
+        boolean failed = false;
+        long retryAt = 0;
+        for (PublicationResult result : this.hypervisor.publish(entry,
+                mediaPath, remaining, this.outbox.getPendingReplies(entry))
+                .values()) {
+            if (result.isUnknown()) {
+                // It may be published, sending it again could post it twice.
+                record(entry, result, true);
+                continue;
+            }
+            if (result.isPosted()) {
+                record(entry, result, result.isSuccess());
+            }
+            if (result.isSuccess()) {
+                continue;
+            }
+            errors.append(errors.length() == 0 ? "" : ", ")
+                    .append(result.getSocialMediaName()).append(": ")
+                    .append(result.getError());
+            if (result.isRateLimited()) {
+                retryAt = Math.max(retryAt, result.getRetryAt());
+            } else {
+                failed = true;
+            }
+        }
+        if (failed) {
+            failed(entry, errors.toString(), retryAt);
+            return;
+        }
+        if (retryAt > 0) {
+            // Waiting for a budget is not a failed attempt.
+            this.outbox.postponed(entry, errors.toString(), retryAt);
+            MetricsRegistry.getSingleton().counter("outbox_postponed_total",
+                    "subreddit", entry.getSubreddit()).increment();
+            return;
+        }
+        this.outbox.done(entry);
+        this.unrecorded.remove(entry.getId());
+        MetricsRegistry.getSingleton().timer("outbox_latency_seconds",
+                "subreddit", entry.getSubreddit()).record(TimeUnit.MILLISECONDS
+                        .toNanos(System.currentTimeMillis()
+                                - entry.getCreatedAt()));
+    }
+
+    /**
+     * Record that an entry has been published on a social media. If the
+     * outbox can't record it, the entry is still considered published there,
+     * so a database error never publishes a post twice.
+     *
+     * @param entry the entry.
+     * @param result the publication.
+     * @param replied if its reply has been published too.
+     */
+    private void record(OutboxEntry entry, PublicationResult result,
+            boolean replied) {
+        try {
+            this.outbox.published(entry, result.getSocialMediaName(),
+                    result.getPostRef(), replied);
+        } catch (SQLException ex) {
+            System.err.println("[!] The publication of \"" + entry.getTitle()
+                    + "\" on " + result.getSocialMediaName()
+                    + " couldn't be recorded: " + ex.getMessage());
+            this.unrecorded.computeIfAbsent(entry.getId(),
+                    id -> ConcurrentHashMap.newKeySet())
+                    .add(result.getSocialMediaName());
+        }
+    }
+
+    /**
+     * Hash the image of an entry, and record the entry as a duplicate if
+     * this image has already been published, or is being published by another
+     * entry. The hash stays in the index while the entry is retried, and
+     * leaves it if the entry is abandoned before being published anywhere.
+     *
+     * @param entry the entry.
+     * @param mediaPath path to its media.
+     * @return if the entry is a duplicate.
+     *
+     * @throws SQLException
+     */
+    private boolean isDuplicate(OutboxEntry entry, String mediaPath)
+            throws SQLException {
+        long hash;
+        long start = System.nanoTime();
+        try {
+            hash = DifferenceHash.of(new File(mediaPath));
+        } catch (IOException ex) {
+            // Videos and unknown formats are just published.
+            return false;
+        } finally {
+            MetricsRegistry.getSingleton().timer("image_hash_seconds")
+                    .record(System.nanoTime() - start);
+        }
+        long original = this.images.addIfUnique(hash, entry.getId());
+        if (original < 0) {
+            this.outbox.imageHashed(entry, hash);
+            return false;
+        }
+        System.out.println("[*] Post \"" + entry.getTitle()
+                + "\" is a duplicate of an already published image.");
+        this.outbox.duplicate(entry, hash, original);
+        MetricsRegistry.getSingleton().counter("duplicates_total",
+                "subreddit", entry.getSubreddit()).increment();
+        return true;
+    }
+
+    /**
+     * Record a failed attempt, and schedule the next one unless there were
+     * too many.
+     *
+     * @param entry the entry.
+     * @param error why the attempt failed.
+     *
+     * @throws SQLException
+     */
+    private void failed(OutboxEntry entry, String error) throws SQLException {
+        failed(entry, error, 0);
+    }
+
+    /**
+     * Record a failed attempt, and schedule the next one unless there were
+     * too many, not before a given time.
+     *
+     * @param entry the entry.
+     * @param error why the attempt failed.
+     * @param notBefore when the next attempt can happen at the earliest, in
+     * milliseconds.
+     *
+     * @throws SQLException
+     */
+    private void failed(OutboxEntry entry, String error, long notBefore)
+            throws SQLException {
+        int attempts = entry.getAttempts() + 1;
+        if (attempts >= this.maxAttempts) {
+            System.err.println("[!] Post \"" + entry.getTitle()
+                    + "\" is abandoned after " + attempts + " attempts: "
+                    + error + ".");
+            this.outbox.failed(entry, error, -1);
+            boolean published = this.unrecorded.remove(entry.getId()) != null
+                    || this.outbox.hasPublications(entry);
+            if (this.images != null && !published) {
+                // Its image was never published, it can't be duplicated.
+                this.images.remove(entry.getId());
+            }
+            MetricsRegistry.getSingleton().counter("outbox_abandoned_total",
+                    "subreddit", entry.getSubreddit()).increment();
+            return;
+        }
+        long delay = Math.max(this.retryDelay << Math.min(attempts - 1, 20),
+                notBefore - System.currentTimeMillis());
+        System.err.println("[!] Post \"" + entry.getTitle()
+                + "\" couldn't be shared, " + error + ". Retrying in "
+                + delay / 1000 + " seconds.");
+        this.outbox.failed(entry, error, System.currentTimeMillis() + delay);
+        MetricsRegistry.getSingleton().counter("outbox_retries_total",
+                "subreddit", entry.getSubreddit()).increment();
+    }
+
+    /**
+     * Stop the stages. The entries in the pipeline stay in the outbox.
+     */
+    void shutdown() {
+        this.download.shutdown();
+        this.hash.shutdown();
+        this.publish.shutdown();
+    }
+
+    /**
+     * An entry going through the pipeline.
+     */
+    private static final class Job {
+
+        /**
+         * The entry.
+         */
+        private final OutboxEntry entry;
+
+        /**
+         * Path to its media, once downloaded and pinned in the cache.
+         */
+        private String mediaPath;
+
+        /**
+         * Main constructor.
+         *
+         * @param entry the entry.
+         */
+        private Job(OutboxEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import xyz.vallat.louis.metricsHandler.Histogram;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stage of the publication pipeline: a bounded queue, and workers taking
+ * the items out of it. When the queue is full, the stage before waits to hand
+ * over its items, so a slow stage slows down the ones before it instead of
+ * piling up items in memory.
+ *
+ * Every stage exposes its queue depth (stage_queue_depth), its busy workers
+ * (stage_busy_workers), the items it handled (stage_items_total), how long
+ * they took (stage_seconds) and how long the stage before waited for room in
+ * the queue (stage_wait_seconds).
+ *
+ * @param <T> the items.
+ *
+ * @author louis
+ */
+final class PipelineStage<T> {
+
+    /**
+     * What a stage does with its items.
+     *
+     * @param <T> the items.
+     */
+    interface Handler<T> {
+
+        /**
+         * Handle an item.
+         *
+         * @param item the item.
+         *
+         * @throws Exception
+         */
+        void handle(T item) throws Exception;
+    }
+
+    /**
+     * Stage's name.
+     */
+    private final String name;
+
+    /**
+     * The items waiting for a worker.
+     */
+    private final BlockingQueue<T> queue;
+
+    /**
+     * How many workers.
+     */
+    private final int workers;
+
+    /**
+     * The workers.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * What the stage does with its items.
+     */
+    private final Handler<T> handler;
+
+    /**
+     * How many workers are handling an item.
+     */
+    private final AtomicInteger busy = new AtomicInteger();
+
+    /**
+     * Time spent on every item.
+     */
+    private final Histogram duration;
+
+    /**
+     * Time spent waiting for room in the queue.
+     */
+    private final Histogram wait;
+
+    /**
+     * Main constructor.
+     *
+     * @param name stage's name.
+     * @param workers how many items are handled at the same time.
+     * @param capacity how many items can wait in the queue.
+     * @param blocking if the work is blocking I/O, which can run on virtual
+     * threads, rather than CPU work.
+     * @param handler what the stage does with its items.
+     */
+    PipelineStage(String name, int workers, int capacity, boolean blocking,
+            Handler<T> handler) {
+        if (workers < 1 || capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Workers and capacity should be positive, and they were "
+                    + workers + " and " + capacity + ".");
+        }
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.workers = workers;
+        this.pool = blocking ? Workers.newPool(name, workers)
+                : Workers.newPlatformPool(name, workers);
+        this.handler = handler;
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        this.duration = metrics.timer("stage_seconds", "stage", name);
+        this.wait = metrics.timer("stage_wait_seconds", "stage", name);
+        metrics.gauge("stage_queue_depth", this.queue::size, "stage", name);
+        metrics.gauge("stage_busy_workers", this.busy::get, "stage", name);
+    }
+
+    /**
+     * Start the workers.
+     */
+    void start() {
+        for (int i = 0; i < this.workers; i++) {
+            this.pool.execute(this::work);
+        }
+    }
+
+    /**
+     * Take the items out of the queue and handle them, until the stage is
+     * shut down.
+     */
+    private void work() {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = this.queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.busy.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                this.handler.handle(item);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                System.err.println("[!] The " + this.name
+                        + " stage failed: " + ex);
+                metrics.counter("stage_errors_total", "stage", this.name)
+                        .increment();
+            } finally {
+                this.busy.decrementAndGet();
+                this.duration.recordSince(start);
+                metrics.counter("stage_items_total", "stage", this.name)
+                        .increment();
+            }
+        }
+    }
+
+    /**
+     * Hand an item to the stage, waiting for room in the queue.
+     *
+     * @param item the item.
+     *
+     * @throws InterruptedException
+     */
+    void put(T item) throws InterruptedException {
+        if (this.queue.offer(item)) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.queue.put(item);
+        this.wait.recordSince(start);
+    }
+
+    /**
+     * Hand an item to the stage if there is room in the queue.
+     *
+     * @param item the item.
+     * @return if the item was accepted.
+     */
+    boolean offer(T item) {
+        return this.queue.offer(item);
+    }
+
+    /**
+     * Get how many more items the queue can take.
+     *
+     * @return the room left in the queue.
+     */
+    int remainingCapacity() {
+        return this.queue.remainingCapacity();
+    }
+
+    /**
+     * Stop the workers. The items still in the queue are dropped.
+     */
+    void shutdown() {
+        this.pool.shutdownNow();
+        this.queue.clear();
+    }
+}
@@ -16,6 +16,7 @@
  */
 package xyz.vallat.louis;
 
+import xyz.vallat.louis.socialMediaHandler.RateLimitedPoster;
 import xyz.vallat.louis.socialMediaHandler.TwitterBot;
 import xyz.vallat.louis.exceptions.NoSuchFile;
 import xyz.vallat.louis.exceptions.NoSuchOrder;
@@ -62,7 +63,7 @@ public class RedditReposterBot {
 
         System.out.println("[*] App version " + VERSION);
         Hypervisor master = Hypervisor.getSingleton();
-        master.addSocialMedia(new TwitterBot());
+        master.addSocialMedia(new RateLimitedPoster(new TwitterBot()));
         master.run();
     }
 }
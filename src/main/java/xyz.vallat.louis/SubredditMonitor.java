@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import xyz.vallat.louis.databaseHandler.PostsTable;
+import xyz.vallat.louis.exceptions.CircuitOpen;
+import xyz.vallat.louis.redditHandler.RedditExtractor;
+import xyz.vallat.louis.redditHandler.RedditListing;
+import xyz.vallat.louis.redditHandler.RedditPost;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan of a single subreddit. Every run is one cycle: the listing is fetched,
+ * and the new posts are claimed in the database and added to the outbox, for
+ * the publisher to share them. The next scan is then scheduled after an
+ * adaptive delay. A failed request to Reddit is retried by scheduling the scan
+ * again after its backoff, so no thread sleeps while waiting for it. A failing
+ * cycle never stops the other subreddits, nor the next cycles of this one.
+ *
+ * @author louis
+ */
+final class SubredditMonitor implements Runnable {
+
+    /**
+     * Subreddit's name.
+     */
+    private final String name;
+
+    /**
+     * Delay between two scans.
+     */
+    private final AdaptivePollingPolicy polling;
+
+    /**
+     * Scheduler running the scans.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Pool running the scans, or null to run them on the scheduler.
+     */
+    private ExecutorService pollers;
+
+    /**
+     * The next scan, once scheduled.
+     */
+    private ScheduledFuture<?> next;
+
+    /**
+     * When the previous scan started, in milliseconds.
+     */
+    private long previousScan;
+
+    /**
+     * RedditExtractor of the subreddit.
+     */
+    private final RedditExtractor extractor;
+
+    /**
+     * Table of the already parsed posts of the subreddit.
+     */
+    private final PostsTable posts;
+
+    /**
+     * The hypervisor sharing the posts.
+     */
+    private final Hypervisor hypervisor;
+
+    /**
+     * How much faster than the real time the subreddit is scanned, above 1
+     * when Reddit is replayed, 0 to scan as fast as possible.
+     */
+    private final double speedup;
+
+    /**
+     * Delay before the current scan, in seconds.
+     */
+    private int lastDelay;
+
+    /**
+     * Failed attempts of the current cycle.
+     */
+    private int failedAttempts;
+
+    /**
+     * Main constructor.
+     *
+     * @param name subreddit's name
+     * @param polling delay between two scans
+     * @param extractor the subreddit's extractor
+     * @param posts the subreddit's table
+     * @param hypervisor the hypervisor sharing the posts
+     * @param speedup how much faster than the real time the subreddit is
+     * scanned, 0 to scan as fast as possible
+     */
+    SubredditMonitor(String name, AdaptivePollingPolicy polling,
+            RedditExtractor extractor, PostsTable posts,
+            Hypervisor hypervisor, double speedup) {
+        this.name = name;
+        this.polling = polling;
+        this.extractor = extractor;
+        this.posts = posts;
+        this.hypervisor = hypervisor;
+        this.speedup = speedup;
+    }
+
+    /**
+     * Start scanning the subreddit on a scheduler.
+     *
+     * @param scheduler the scheduler.
+     * @param pollers pool running the scans, or null to run them on the
+     * scheduler.
+     */
+    void start(ScheduledExecutorService scheduler, ExecutorService pollers) {
+        this.scheduler = scheduler;
+        this.pollers = pollers;
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        metrics.gauge("polling_delay_seconds", this.polling::getDelay,
+                "subreddit", this.name);
+        metrics.gauge("polling_rate_per_minute",
+                this.polling::getRatePerMinute, "subreddit", this.name);
+        metrics.gauge("polling_adjustments", this.polling::getShortened,
+                "subreddit", this.name, "direction", "shortened");
+        metrics.gauge("polling_adjustments", this.polling::getLengthened,
+                "subreddit", this.name, "direction", "lengthened");
+        metrics.gauge("polling_overflows", this.polling::getOverflows,
+                "subreddit", this.name);
+        submit();
+    }
+
+    /**
+     * Run a scan now, on the pool of the scans.
+     */
+    private void submit() {
+        try {
+            (this.pollers != null ? this.pollers : this.scheduler)
+                    .execute(this);
+        } catch (RejectedExecutionException ex) {
+            // The hypervisor is shutting down.
+        }
+    }
+
+    /**
+     * Scan the subreddit once, and schedule the next scan. The scan is
+     * skipped while the outbox is backed up. If Reddit couldn't tell at
+     * startup whether the subreddit exists, the scan checks it first, and a
+     * subreddit that doesn't exist is not scanned anymore.
+     */
+    @Override
+    public void run() {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        if (hypervisor.isBackedUp()) {
+            // The posts stay on Reddit until the publication catches up.
+            System.out.println("[*] The outbox is backed up. Skipping /r/"
+                    + this.name + " for this cycle.");
+            metrics.counter("backpressure_skips_total", "subreddit",
+                    this.name).increment();
+            scheduleNext(this.polling.getDelay());
+            return;
+        }
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int arrivals = 0;
+        int children = 0;
+        long retry = -1;
+        boolean missing = false;
+        try {
+            if (!this.extractor.isChecked()
+                    && !this.extractor.checkExists(false)) {
+                System.err.println("[!] /r/" + this.name + " does not exist. "
+                        + "It is no longer monitored.");
+                missing = true;
+                return;
+            }
+            // Without a cursor, the listing is always full of old posts.
+            boolean incremental = this.extractor.getSubReddit().hasCursor();
+            RedditListing listing = this.extractor.getRedditPosts();
+            this.failedAttempts = 0;
+            List<RedditPost> claimed = this.posts.claim(listing.getPosts(),
+                    hypervisor::isShareable, hypervisor.getOutbox());
+            // A failed claim leaves the cursor, so the posts are asked again.
+            this.extractor.commit(listing);
+            arrivals = claimed.size();
+            children = incremental ? listing.size() : arrivals;
+            if (!claimed.isEmpty()) {
+                hypervisor.getPublisher().wakeUp();
+            }
+            System.out.println("[*] /r/" + this.name + " seen-post index: "
+                    + this.posts.getSeenPosts() + ".");
+        } catch (CircuitOpen ex) {
+            System.out.println("[*] " + ex.getMessage() + " Skipping /r/"
+                    + this.name + " for this cycle.");
+            metrics.counter("cycles_skipped_total", "subreddit", this.name)
+                    .increment();
+        } catch (IOException ex) {
+            retry = this.extractor.getRetryPolicy().retryDelay(
+                    ++this.failedAttempts, ex);
+            if (retry < 0) {
+                this.failedAttempts = 0;
+                System.err.println("[!] IOException: " + ex.getMessage());
+                System.err.println("[!] Giving up on /r/" + this.name
+                        + " for this cycle.");
+                metrics.counter("reddit_listing_errors_total",
+                        "subreddit", this.name).increment();
+            }
+        } catch (Exception ex) {
+            System.err.println("[!] /r/" + this.name + " cycle failed: "
+                    + ex);
+            metrics.counter("cycle_errors_total", "subreddit", this.name)
+                    .increment();
+        } finally {
+            metrics.timer("cycle_seconds", "subreddit", this.name)
+                    .recordSince(start);
+            if (retry >= 0) {
+                // The same cycle goes on with the next attempt.
+                schedule(retry);
+            } else if (!missing) {
+                metrics.histogram("posts_per_cycle", "subreddit", this.name)
+                        .record(arrivals);
+                double elapsed = this.previousScan == 0 ? 0
+                        : this.speedup > 0
+                                ? (now - this.previousScan) / 1000.0
+                                * this.speedup
+                                : this.lastDelay;
+                int delay = this.polling.nextDelay(arrivals, children,
+                        elapsed);
+                this.previousScan = now;
+                this.lastDelay = delay;
+                System.out.println("[*] /r/" + this.name + " polling: "
+                        + this.polling + ".");
+                System.out.println("[*] /r/" + this.name + " is waiting for "
+                        + delay + " seconds.");
+                scheduleNext(delay);
+            }
+        }
+    }
+
+    /**
+     * Schedule the next scan.
+     *
+     * @param delay the delay before the scan, in seconds.
+     */
+    private void scheduleNext(int delay) {
+        schedule(delay * 1000L);
+    }
+
+    /**
+     * Schedule the next scan.
+     *
+     * @param delay the delay before the scan, in milliseconds.
+     */
+    private synchronized void schedule(long delay) {
+        if (!this.scheduler.isShutdown()) {
+            this.next = this.scheduler.schedule(
+                    this.pollers != null ? (Runnable) this::submit : this,
+                    toRealTime(delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Convert a delay to the real time, given the speed-up.
+     *
+     * @param delay the delay, in seconds.
+     * @return the real delay, in milliseconds.
+     */
+    private long toMillis(int delay) {
+        return toRealTime(delay * 1000L);
+    }
+
+    /**
+     * Convert a delay to the real time, given the speed-up.
+     *
+     * @param delay the delay, in milliseconds.
+     * @return the real delay, in milliseconds.
+     */
+    private long toRealTime(long delay) {
+        return this.speedup > 0 ? Math.round(delay / this.speedup) : 0;
+    }
+
+    /**
+     * Change the polling settings of the subreddit while it is polled. If the
+     * next scan was planned later than the new delay, it is moved earlier.
+     *
+     * @param delay the new delay, in seconds.
+     * @param minDelay minimum delay between two scans, in seconds.
+     * @param maxDelay maximum delay between two scans, in seconds.
+     * @param limit size of the listing window.
+     */
+    synchronized void reconfigure(int delay, int minDelay, int maxDelay,
+            int limit) {
+        this.extractor.getSubReddit().setLimit(limit);
+        this.polling.configure(delay, minDelay, maxDelay, limit);
+        int current = this.polling.getDelay();
+        if (this.next != null
+                && this.next.getDelay(TimeUnit.MILLISECONDS) > toMillis(current)
+                && this.next.cancel(false)) {
+            this.lastDelay = current;
+            scheduleNext(current);
+        }
+    }
+
+    /**
+     * Get subreddit's name.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the delay between two scans.
+     *
+     * @return the delay.
+     */
+    public AdaptivePollingPolicy getPolling() {
+        return polling;
+    }
+
+    /**
+     * Get the table of the already parsed posts.
+     *
+     * @return the table.
+     */
+    public PostsTable getPosts() {
+        return posts;
+    }
+}
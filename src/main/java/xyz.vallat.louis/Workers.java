@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pools running the blocking network work: the polls, the downloads and the
+ * publications. By default, a pool is a fixed number of platform threads. In
+ * the virtual threads mode, available from Java 21, every task gets its own
+ * virtual thread, and only a semaphore bounds how many run at the same time,
+ * so the bound can be raised to thousands for the cost of a permit.
+ *
+ * The bot is built for Java 8, so the virtual threads are reached by
+ * reflection.
+ *
+ * @author louis
+ */
+public final class Workers {
+
+    /**
+     * Thread.ofVirtual(), or null before Java 21.
+     */
+    private static final Method OF_VIRTUAL = findMethod(Thread.class,
+            "ofVirtual");
+
+    /**
+     * If the new pools run their tasks on virtual threads.
+     */
+    private static volatile boolean VIRTUAL = false;
+
+    /**
+     * Utility class.
+     */
+    private Workers() {
+    }
+
+    /**
+     * Check if this Java runs virtual threads.
+     *
+     * @return if the virtual threads are available.
+     */
+    public static boolean isVirtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Choose if the new pools run their tasks on virtual threads. Without
+     * virtual threads, the platform threads are kept.
+     *
+     * @param virtual if the virtual threads should be used.
+     * @return if the virtual threads are used.
+     */
+    public static boolean useVirtualThreads(boolean virtual) {
+        if (virtual && !isVirtualAvailable()) {
+            System.err.println("[!] Virtual threads need Java 21, and this is "
+                    + "Java " + System.getProperty("java.version")
+                    + ". Using platform threads.");
+            virtual = false;
+        }
+        VIRTUAL = virtual;
+        return virtual;
+    }
+
+    /**
+     * Check if the new pools run their tasks on virtual threads.
+     *
+     * @return if the virtual threads are used.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    /**
+     * Create a pool, in the current mode.
+     *
+     * @param name the threads name.
+     * @param threads how many tasks can run at the same time.
+     * @return the pool.
+     */
+    public static ExecutorService newPool(String name, int threads) {
+        return VIRTUAL ? newVirtualPool(name, threads)
+                : newPlatformPool(name, threads);
+    }
+
+    /**
+     * Create a pool of daemon platform threads.
+     *
+     * @param name the threads name.
+     * @param threads how many threads, and so how many tasks can run at the
+     * same time.
+     * @return the pool.
+     */
+    public static ExecutorService newPlatformPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Create a pool starting a virtual thread for every task, with at most a
+     * given number of tasks running at the same time.
+     *
+     * @param name the threads name.
+     * @param threads how many tasks can run at the same time.
+     * @return the pool.
+     *
+     * @throws UnsupportedOperationException
+     */
+    public static ExecutorService newVirtualPool(String name, int threads) {
+        if (!isVirtualAvailable()) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21.");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass
+                    .getMethod("factory").invoke(builder);
+            ExecutorService perTask = (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+            return new BoundedExecutor(perTask, threads);
+        } catch (ClassNotFoundException | NoSuchMethodException
+                | IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException(
+                    "Could not create virtual threads: " + ex, ex);
+        }
+    }
+
+    /**
+     * Find a public method.
+     *
+     * @param type the class of the method.
+     * @param name the method name.
+     * @return the method, or null if there is none.
+     */
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Run the tasks on an executor, with at most a given number of them
+     * running at the same time. A task waits for its permit on its own
+     * thread, so the caller never blocks.
+     */
+    private static final class BoundedExecutor
+            extends AbstractExecutorService {
+
+        /**
+         * The executor running the tasks.
+         */
+        private final ExecutorService delegate;
+
+        /**
+         * The permits of the running tasks.
+         */
+        private final Semaphore permits;
+
+        /**
+         * Main constructor.
+         *
+         * @param delegate the executor running the tasks.
+         * @param permits how many tasks can run at the same time.
+         */
+        private BoundedExecutor(ExecutorService delegate, int permits) {
+            if (permits < 1) {
+                throw new IllegalArgumentException(
+                        "Permits should be positive, and they were "
+                        + permits + ".");
+            }
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+            if (this.delegate.isShutdown()) {
+                throw new RejectedExecutionException("The pool is shut down.");
+            }
+            this.delegate.execute(() -> {
+                try {
+                    this.permits.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            this.delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            this.delegate.shutdownNow();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return this.delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
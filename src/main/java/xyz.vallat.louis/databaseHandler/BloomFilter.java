@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+/**
+ * A simple Bloom filter for strings. It can tell for sure that a key has never
+ * been added, but may answer "maybe" for a key it has never seen.
+ *
+ * @author louis
+ */
+public final class BloomFilter {
+
+    /**
+     * The bit array.
+     */
+    private final long[] bits;
+
+    /**
+     * Number of bits in the filter.
+     */
+    private final long numBits;
+
+    /**
+     * Number of hash functions applied on every key.
+     */
+    private final int numHashes;
+
+    /**
+     * Create a Bloom filter sized for a given number of keys and false
+     * positive rate.
+     *
+     * @param expectedInsertions how many keys we expect to add.
+     * @param falsePositiveRate the wanted false positive rate, between 0 and 1.
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException(
+                    "Expected insertions should be positive, and it was "
+                    + expectedInsertions + ".");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "False positive rate should be between 0 and 1, and it was "
+                    + falsePositiveRate + ".");
+        }
+        long m = (long) Math.ceil(-expectedInsertions
+                * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.numBits = this.bits.length * 64L;
+        this.numHashes = Math.max(1,
+                (int) Math.round((double) m / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Add a key to the filter.
+     *
+     * @param key the key to add.
+     */
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * Check if a key might have been added to the filter.
+     *
+     * @param key the key to check.
+     * @return false if the key has never been added, true if it might have.
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64 bits FNV-1a hash of a string, with a final mix so both halves can be
+     * used as independent hashes.
+     *
+     * @param key the key to hash.
+     * @return the hash.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
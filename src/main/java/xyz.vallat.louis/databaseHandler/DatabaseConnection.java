@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Long-lived connection to the SQLITE database. The connection is opened once,
+ * tuned with some pragmas, and keeps its prepared statements so every query
+ * is only prepared once.
+ *
+ * @author louis
+ */
+public final class DatabaseConnection {
+
+    /**
+     * Pragmas applied on every new connection. WAL lets readers and the
+     * writer work at the same time, and NORMAL synchronous is safe with WAL.
+     */
+    private static final String[] PRAGMAS = {
+        "PRAGMA journal_mode = WAL;",
+        "PRAGMA synchronous = NORMAL;",
+        "PRAGMA cache_size = -16000;",
+        "PRAGMA temp_store = MEMORY;",
+        "PRAGMA busy_timeout = 5000;"
+    };
+
+    /**
+     * JDBC URL of the database.
+     */
+    private final String url;
+
+    /**
+     * The connection.
+     */
+    private Connection connection;
+
+    /**
+     * Prepared statements, by SQL query.
+     */
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Open a connection to a SQLITE database file.
+     *
+     * @param databasePath path to the database file.
+     *
+     * @throws ClassNotFoundException
+     * @throws SQLException
+     */
+    public DatabaseConnection(String databasePath)
+            throws ClassNotFoundException, SQLException {
+        Class.forName("org.sqlite.JDBC");
+        this.url = "jdbc:sqlite:" + databasePath;
+        open();
+    }
+
+    /**
+     * Open the connection and apply the pragmas.
+     *
+     * @throws SQLException
+     */
+    private void open() throws SQLException {
+        this.connection = DriverManager.getConnection(this.url);
+        try (Statement stmt = this.connection.createStatement()) {
+            for (String pragma : PRAGMAS) {
+                stmt.execute(pragma);
+            }
+        }
+    }
+
+    /**
+     * Get the connection, opening it again if it has been closed.
+     *
+     * @return the connection.
+     *
+     * @throws SQLException
+     */
+    public synchronized Connection getConnection() throws SQLException {
+        if (this.connection == null || this.connection.isClosed()) {
+            System.out.println("[*] Reopening the database connection.");
+            this.statements.clear();
+            open();
+        }
+        return this.connection;
+    }
+
+    /**
+     * Get a prepared statement for a query. The statement is prepared the
+     * first time and then reused, so callers must not close it.
+     *
+     * @param sql the SQL query.
+     * @return the prepared statement.
+     *
+     * @throws SQLException
+     */
+    public synchronized PreparedStatement prepare(String sql)
+            throws SQLException {
+        Connection current = getConnection();
+        PreparedStatement stmt = this.statements.get(sql);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = current.prepareStatement(sql);
+            this.statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /**
+     * Check that the connection still answers, and reopen it if it doesn't.
+     *
+     * @return if the connection had to be reopened.
+     *
+     * @throws SQLException
+     */
+    public synchronized boolean checkHealth() throws SQLException {
+        try (ResultSet res = prepare("SELECT 1;").executeQuery()) {
+            if (res.next()) {
+                return false;
+            }
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
+        }
+        System.out.println("[*] The database connection is unhealthy.");
+        close();
+        getConnection();
+        return true;
+    }
+
+    /**
+     * Close the statements and the connection.
+     */
+    public synchronized void close() {
+        for (PreparedStatement stmt : this.statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException ex) {
+                System.err.println("[!] SQLException: " + ex.getMessage());
+            }
+        }
+        this.statements.clear();
+        try {
+            if (this.connection != null) {
+                this.connection.close();
+            }
+        } catch (SQLException ex) {
+            System.err.println("[!] SQLException: " + ex.getMessage());
+        }
+        this.connection = null;
+    }
+}
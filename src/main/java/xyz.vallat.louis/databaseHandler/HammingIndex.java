@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of 64 bits image hashes, finding the hashes within a given
+ * Hamming distance. The hashes are cut in one more chunk than the distance,
+ * so two hashes close enough have at least one chunk in common: every chunk
+ * has its own table, and only the hashes sharing a chunk with the looked up
+ * one are compared.
+ *
+ * @author louis
+ */
+public final class HammingIndex {
+
+    /**
+     * Largest distance between two hashes of the same image.
+     */
+    private final int maxDistance;
+
+    /**
+     * First bit of every chunk.
+     */
+    private final int[] shifts;
+
+    /**
+     * Mask of every chunk, once shifted.
+     */
+    private final long[] masks;
+
+    /**
+     * For every chunk, the positions of the hashes by chunk value. The first
+     * cell of a bucket is its size.
+     */
+    private final List<Map<Long, int[]>> tables;
+
+    /**
+     * The positions of the hashes by id, in the same format as the buckets,
+     * so an image is removed without a scan.
+     */
+    private final Map<Long, int[]> positions = new HashMap<>();
+
+    /**
+     * The hashes, by position.
+     */
+    private long[] hashes = new long[1024];
+
+    /**
+     * The ids of the hashes, by position. The removed hashes have the id -1.
+     */
+    private long[] ids = new long[1024];
+
+    /**
+     * Number of positions used.
+     */
+    private int size;
+
+    /**
+     * Number of hashes removed.
+     */
+    private int removed;
+
+    /**
+     * Main constructor.
+     *
+     * @param maxDistance largest distance between two hashes of the same
+     * image, from 0 to 63.
+     */
+    public HammingIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(63, maxDistance));
+        int chunks = this.maxDistance + 1;
+        this.shifts = new int[chunks];
+        this.masks = new long[chunks];
+        this.tables = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = i * 64 / chunks;
+            int to = (i + 1) * 64 / chunks;
+            this.shifts[i] = from;
+            this.masks[i] = to - from == 64 ? -1L : (1L << (to - from)) - 1;
+            this.tables.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Add a hash.
+     *
+     * @param hash the hash.
+     * @param id the id of the hashed image.
+     */
+    public synchronized void add(long hash, long id) {
+        if (this.size == this.hashes.length) {
+            this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+            this.ids = Arrays.copyOf(this.ids, this.size * 2);
+        }
+        this.hashes[this.size] = hash;
+        this.ids[this.size] = id;
+        for (int i = 0; i < this.tables.size(); i++) {
+            this.tables.get(i).merge(chunk(hash, i),
+                    new int[]{1, this.size}, HammingIndex::append);
+        }
+        this.positions.merge(id, new int[]{1, this.size},
+                HammingIndex::append);
+        this.size++;
+    }
+
+    /**
+     * Add a hash, unless the index already holds a near-duplicate of it.
+     *
+     * @param hash the hash.
+     * @param id the id of the hashed image.
+     * @return -1 if the hash was added, or the id of the near-duplicate.
+     */
+    public synchronized long addIfUnique(long hash, long id) {
+        long duplicate = findNearest(hash, id);
+        if (duplicate < 0) {
+            add(hash, id);
+        }
+        return duplicate;
+    }
+
+    /**
+     * Remove the hashes of an image. Their positions are left empty.
+     *
+     * @param id the id of the hashed image.
+     */
+    public synchronized void remove(long id) {
+        int[] bucket = this.positions.remove(id);
+        if (bucket == null) {
+            return;
+        }
+        for (int j = 1; j <= bucket[0]; j++) {
+            this.ids[bucket[j]] = -1;
+            this.removed++;
+        }
+    }
+
+    /**
+     * Find the nearest hash within the largest distance.
+     *
+     * @param hash the hash.
+     * @param excludedId an id to ignore, the looked up image's own id.
+     * @return the id of the nearest hash, or -1 if there is none.
+     */
+    public synchronized long findNearest(long hash, long excludedId) {
+        long nearest = -1;
+        int best = this.maxDistance + 1;
+        for (int i = 0; i < this.tables.size(); i++) {
+            int[] bucket = this.tables.get(i).get(chunk(hash, i));
+            if (bucket == null) {
+                continue;
+            }
+            for (int j = 1; j <= bucket[0]; j++) {
+                int position = bucket[j];
+                int distance = Long.bitCount(this.hashes[position] ^ hash);
+                if (distance < best && this.ids[position] != excludedId
+                        && this.ids[position] != -1) {
+                    best = distance;
+                    nearest = this.ids[position];
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Get the number of hashes.
+     *
+     * @return the size.
+     */
+    public synchronized int size() {
+        return size - removed;
+    }
+
+    /**
+     * Get a chunk of a hash.
+     *
+     * @param hash the hash.
+     * @param i the chunk number.
+     * @return the chunk value.
+     */
+    private long chunk(long hash, int i) {
+        return (hash >>> this.shifts[i]) & this.masks[i];
+    }
+
+    /**
+     * Append the positions of a bucket to another bucket.
+     *
+     * @param bucket the bucket.
+     * @param added the bucket to append.
+     * @return the bucket, grown if needed.
+     */
+    private static int[] append(int[] bucket, int[] added) {
+        int size = bucket[0] + added[0];
+        if (size >= bucket.length) {
+            bucket = Arrays.copyOf(bucket, Math.max(size + 1,
+                    bucket.length * 2));
+        }
+        System.arraycopy(added, 1, bucket, bucket[0] + 1, added[0]);
+        bucket[0] = size;
+        return bucket;
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+import xyz.vallat.louis.redditHandler.RedditPost;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outbox, where the claimed posts wait to be published. Every entry keeps
+ * its state and the social medias it has already been published on, so the
+ * publication of a post resumes where it stopped, even after a restart.
+ *
+ * @author louis
+ */
+public final class Outbox {
+
+    /**
+     * Connection to the SQLITE database.
+     */
+    private final DatabaseConnection database;
+
+    /**
+     * Main constructor.
+     *
+     * @param database the database connection.
+     */
+    public Outbox(DatabaseConnection database) {
+        this.database = database;
+    }
+
+    /**
+     * Create the outbox tables if they don't exist yet.
+     *
+     * @throws SQLException
+     */
+    public void create() throws SQLException {
+        synchronized (this.database) {
+            try (Statement stmt = this.database.getConnection()
+                    .createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS outbox "
+                        + "("
+                        + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "subreddit TEXT, "
+                        + "postId TEXT, "
+                        + "title TEXT, "
+                        + "author TEXT, "
+                        + "permalink TEXT, "
+                        + "url TEXT, "
+                        + "state TEXT, "
+                        + "mediaPath TEXT, "
+                        + "attempts INTEGER DEFAULT 0, "
+                        + "retryAt INTEGER DEFAULT 0, "
+                        + "lastError TEXT, "
+                        + "imageHash INTEGER, "
+                        + "createdAt INTEGER, "
+                        + "UNIQUE (subreddit, postId)"
+                        + ");");
+                // The image hashes came after the first outboxes.
+                if (!hasColumn(stmt, "outbox", "imageHash")) {
+                    stmt.execute("ALTER TABLE outbox "
+                            + "ADD COLUMN imageHash INTEGER;");
+                }
+                stmt.execute("CREATE INDEX IF NOT EXISTS outbox_due "
+                        + "ON outbox (state, retryAt);");
+                stmt.execute("CREATE TABLE IF NOT EXISTS outbox_publications "
+                        + "("
+                        + "entryId INTEGER, "
+                        + "platform TEXT, "
+                        + "postRef INTEGER, "
+                        + "replied BOOLEAN DEFAULT 1, "
+                        + "PRIMARY KEY (entryId, platform)"
+                        + ");");
+                // The replies were not tracked by the first outboxes.
+                if (!hasColumn(stmt, "outbox_publications", "replied")) {
+                    stmt.execute("ALTER TABLE outbox_publications "
+                            + "ADD COLUMN replied BOOLEAN DEFAULT 1;");
+                }
+                stmt.execute("CREATE TABLE IF NOT EXISTS published_images "
+                        + "("
+                        + "id INTEGER PRIMARY KEY, "
+                        + "imageHash INTEGER"
+                        + ");");
+            }
+        }
+    }
+
+    /**
+     * Check if a table has a column.
+     *
+     * @param stmt a statement of the connection.
+     * @param table the table name.
+     * @param column the column name.
+     * @return if the column exists.
+     *
+     * @throws SQLException
+     */
+    private static boolean hasColumn(Statement stmt, String table,
+            String column) throws SQLException {
+        try (ResultSet res = stmt.executeQuery(
+                "PRAGMA table_info(" + table + ");")) {
+            while (res.next()) {
+                if (column.equals(res.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all the entries.
+     *
+     * @throws SQLException
+     */
+    public void clear() throws SQLException {
+        synchronized (this.database) {
+            try (Statement stmt = this.database.getConnection()
+                    .createStatement()) {
+                stmt.execute("DELETE FROM outbox_publications;");
+                stmt.execute("DELETE FROM outbox;");
+                stmt.execute("DELETE FROM published_images;");
+            }
+        }
+    }
+
+    /**
+     * Add a post to the outbox. Called by the posts table, inside the
+     * transaction claiming the post.
+     *
+     * @param subreddit the subreddit the post comes from.
+     * @param post the post.
+     *
+     * @throws SQLException
+     */
+    void add(String subreddit, RedditPost post) throws SQLException {
+        PreparedStatement ajout = this.database.prepare(""
+                + "INSERT OR IGNORE INTO outbox "
+                + "(subreddit, postId, title, author, permalink, url, state, "
+                + "createdAt) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?);");
+        ajout.setString(1, subreddit);
+        ajout.setString(2, post.getPostId());
+        ajout.setString(3, post.getTitle());
+        ajout.setString(4, post.getAuthor());
+        ajout.setString(5, post.getPermalink());
+        ajout.setString(6, post.getUrl());
+        ajout.setString(7, OutboxEntry.State.DISCOVERED.name());
+        ajout.setLong(8, System.currentTimeMillis());
+        ajout.executeUpdate();
+    }
+
+    /**
+     * Get the entries to publish now, the oldest first.
+     *
+     * @param limit how many entries at most.
+     * @return the entries.
+     *
+     * @throws SQLException
+     */
+    public List<OutboxEntry> due(int limit) throws SQLException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT * FROM outbox "
+                    + "WHERE state IN (?, ?, ?) AND retryAt <= ? "
+                    + "ORDER BY id LIMIT ?;");
+            recherche.setString(1, OutboxEntry.State.DISCOVERED.name());
+            recherche.setString(2, OutboxEntry.State.MEDIA_FETCHED.name());
+            recherche.setString(3, OutboxEntry.State.FAILED.name());
+            recherche.setLong(4, System.currentTimeMillis());
+            recherche.setInt(5, limit);
+            try (ResultSet res = recherche.executeQuery()) {
+                while (res.next()) {
+                    entries.add(new OutboxEntry(res.getLong("id"),
+                            res.getString("subreddit"),
+                            res.getString("postId"),
+                            res.getString("title"),
+                            res.getString("author"),
+                            res.getString("permalink"),
+                            res.getString("url"),
+                            OutboxEntry.State.valueOf(res.getString("state")),
+                            res.getString("mediaPath"),
+                            res.getInt("attempts"),
+                            res.getObject("imageHash") == null ? null
+                            : res.getLong("imageHash"),
+                            res.getLong("createdAt")));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Count the entries still waiting to be published, whether they are due
+     * or waiting for a retry.
+     *
+     * @return the number of entries.
+     *
+     * @throws SQLException
+     */
+    public int pending() throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT COUNT(id) AS cpt FROM outbox "
+                    + "WHERE state IN (?, ?, ?);");
+            recherche.setString(1, OutboxEntry.State.DISCOVERED.name());
+            recherche.setString(2, OutboxEntry.State.MEDIA_FETCHED.name());
+            recherche.setString(3, OutboxEntry.State.FAILED.name());
+            try (ResultSet res = recherche.executeQuery()) {
+                return res.next() ? res.getInt("cpt") : 0;
+            }
+        }
+    }
+
+    /**
+     * Record that the media of an entry has been downloaded.
+     *
+     * @param entry the entry.
+     * @param mediaPath path to the media.
+     *
+     * @throws SQLException
+     */
+    public void mediaFetched(OutboxEntry entry, String mediaPath)
+            throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET state = ?, mediaPath = ? "
+                    + "WHERE id = ?;");
+            maj.setString(1, OutboxEntry.State.MEDIA_FETCHED.name());
+            maj.setString(2, mediaPath);
+            maj.setLong(3, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Record the perceptual hash of the media of an entry.
+     *
+     * @param entry the entry.
+     * @param hash the hash.
+     *
+     * @throws SQLException
+     */
+    public void imageHashed(OutboxEntry entry, long hash) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET imageHash = ? WHERE id = ?;");
+            maj.setLong(1, hash);
+            maj.setLong(2, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Record that the image of an entry has already been published with
+     * another entry.
+     *
+     * @param entry the entry.
+     * @param hash the hash of its image.
+     * @param original the id of the other entry.
+     *
+     * @throws SQLException
+     */
+    public void duplicate(OutboxEntry entry, long hash, long original)
+            throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET state = ?, imageHash = ?, "
+                    + "lastError = ? WHERE id = ?;");
+            maj.setString(1, OutboxEntry.State.DUPLICATE.name());
+            maj.setLong(2, hash);
+            maj.setString(3, "duplicate of entry " + original);
+            maj.setLong(4, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Add the image hashes of all the entries to a Hamming index, including
+     * the pruned ones, but the duplicates and the entries abandoned before
+     * being published anywhere.
+     *
+     * @param index the index.
+     *
+     * @throws SQLException
+     */
+    public void loadImageHashes(HammingIndex index) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT id, imageHash FROM outbox "
+                    + "WHERE imageHash IS NOT NULL AND state <> ? "
+                    + "AND (state <> ? OR id IN "
+                    + "(SELECT entryId FROM outbox_publications));");
+            recherche.setString(1, OutboxEntry.State.DUPLICATE.name());
+            recherche.setString(2, OutboxEntry.State.ABANDONED.name());
+            try (ResultSet res = recherche.executeQuery()) {
+                while (res.next()) {
+                    index.add(res.getLong("imageHash"), res.getLong("id"));
+                }
+            }
+            try (ResultSet res = this.database.prepare(""
+                    + "SELECT id, imageHash FROM published_images;")
+                    .executeQuery()) {
+                while (res.next()) {
+                    index.add(res.getLong("imageHash"), res.getLong("id"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the social medias an entry has already been published on, with its
+     * reply.
+     *
+     * @param entry the entry.
+     * @return the social medias names.
+     *
+     * @throws SQLException
+     */
+    public Set<String> getPublications(OutboxEntry entry) throws SQLException {
+        Set<String> platforms = new HashSet<>();
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT platform FROM outbox_publications "
+                    + "WHERE entryId = ? AND replied;");
+            recherche.setLong(1, entry.getId());
+            try (ResultSet res = recherche.executeQuery()) {
+                while (res.next()) {
+                    platforms.add(res.getString("platform"));
+                }
+            }
+        }
+        return platforms;
+    }
+
+    /**
+     * Check if an entry has been published on any social media, with its
+     * reply or not.
+     *
+     * @param entry the entry.
+     * @return if it has been published.
+     *
+     * @throws SQLException
+     */
+    public boolean hasPublications(OutboxEntry entry) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT 1 FROM outbox_publications "
+                    + "WHERE entryId = ? LIMIT 1;");
+            recherche.setLong(1, entry.getId());
+            try (ResultSet res = recherche.executeQuery()) {
+                return res.next();
+            }
+        }
+    }
+
+    /**
+     * Get the publications of an entry whose reply is missing.
+     *
+     * @param entry the entry.
+     * @return the references of the publications, by social media name.
+     *
+     * @throws SQLException
+     */
+    public Map<String, Long> getPendingReplies(OutboxEntry entry)
+            throws SQLException {
+        Map<String, Long> publications = new HashMap<>();
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(""
+                    + "SELECT platform, postRef FROM outbox_publications "
+                    + "WHERE entryId = ? AND NOT replied;");
+            recherche.setLong(1, entry.getId());
+            try (ResultSet res = recherche.executeQuery()) {
+                while (res.next()) {
+                    publications.put(res.getString("platform"),
+                            res.getLong("postRef"));
+                }
+            }
+        }
+        return publications;
+    }
+
+    /**
+     * Record that an entry has been published on a social media.
+     *
+     * @param entry the entry.
+     * @param platform the social media name.
+     * @param postRef the reference of the publication.
+     * @param replied if its reply has been published too.
+     *
+     * @throws SQLException
+     */
+    public void published(OutboxEntry entry, String platform, long postRef,
+            boolean replied) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement ajout = this.database.prepare(""
+                    + "INSERT OR REPLACE INTO outbox_publications "
+                    + "(entryId, platform, postRef, replied) "
+                    + "VALUES (?, ?, ?, ?);");
+            ajout.setLong(1, entry.getId());
+            ajout.setString(2, platform);
+            ajout.setLong(3, postRef);
+            ajout.setBoolean(4, replied);
+            ajout.executeUpdate();
+        }
+    }
+
+    /**
+     * Record that an entry has been published on all the social medias.
+     *
+     * @param entry the entry.
+     *
+     * @throws SQLException
+     */
+    public void done(OutboxEntry entry) throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET state = ?, lastError = NULL "
+                    + "WHERE id = ?;");
+            maj.setString(1, OutboxEntry.State.PUBLISHED.name());
+            maj.setLong(2, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Record that an attempt to publish an entry failed.
+     *
+     * @param entry the entry.
+     * @param error why it failed.
+     * @param retryAt when to try again, in milliseconds, or -1 to give up.
+     *
+     * @throws SQLException
+     */
+    public void failed(OutboxEntry entry, String error, long retryAt)
+            throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET state = ?, lastError = ?, "
+                    + "retryAt = ?, attempts = attempts + 1 WHERE id = ?;");
+            maj.setString(1, retryAt < 0 ? OutboxEntry.State.ABANDONED.name()
+                    : OutboxEntry.State.FAILED.name());
+            maj.setString(2, error);
+            maj.setLong(3, Math.max(0, retryAt));
+            maj.setLong(4, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Record that an entry couldn't be published yet because of the budget
+     * of a social media. This is not a failed attempt.
+     *
+     * @param entry the entry.
+     * @param error why it was postponed.
+     * @param retryAt when to try again, in milliseconds.
+     *
+     * @throws SQLException
+     */
+    public void postponed(OutboxEntry entry, String error, long retryAt)
+            throws SQLException {
+        synchronized (this.database) {
+            PreparedStatement maj = this.database.prepare(""
+                    + "UPDATE outbox SET state = ?, lastError = ?, "
+                    + "retryAt = ? WHERE id = ?;");
+            maj.setString(1, OutboxEntry.State.FAILED.name());
+            maj.setString(2, error);
+            maj.setLong(3, retryAt);
+            maj.setLong(4, entry.getId());
+            maj.executeUpdate();
+        }
+    }
+
+    /**
+     * Remove the finished entries created before a date. The image hashes of
+     * the ones published on any social media are kept, so their images are
+     * still recognized.
+     *
+     * @param before the date, in milliseconds.
+     * @return the number of entries removed.
+     *
+     * @throws SQLException
+     */
+    public int prune(long before) throws SQLException {
+        synchronized (this.database) {
+            Connection connection = this.database.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement ajout = this.database.prepare(""
+                        + "INSERT OR IGNORE INTO published_images "
+                        + "(id, imageHash) "
+                        + "SELECT id, imageHash FROM outbox "
+                        + "WHERE imageHash IS NOT NULL AND createdAt < ? "
+                        + "AND (state = ? OR (state = ? AND id IN "
+                        + "(SELECT entryId FROM outbox_publications)));");
+                ajout.setLong(1, before);
+                ajout.setString(2, OutboxEntry.State.PUBLISHED.name());
+                ajout.setString(3, OutboxEntry.State.ABANDONED.name());
+                ajout.executeUpdate();
+                PreparedStatement suppression = this.database.prepare(""
+                        + "DELETE FROM outbox_publications WHERE entryId IN "
+                        + "(SELECT id FROM outbox "
+                        + "WHERE state IN (?, ?, ?) AND createdAt < ?);");
+                bindFinished(suppression, before);
+                suppression.executeUpdate();
+                suppression = this.database.prepare(""
+                        + "DELETE FROM outbox "
+                        + "WHERE state IN (?, ?, ?) AND createdAt < ?;");
+                bindFinished(suppression, before);
+                int removed = suppression.executeUpdate();
+                connection.commit();
+                return removed;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Bind the finished states and a date to a statement.
+     *
+     * @param stmt the statement.
+     * @param before the date, in milliseconds.
+     *
+     * @throws SQLException
+     */
+    private static void bindFinished(PreparedStatement stmt, long before)
+            throws SQLException {
+        stmt.setString(1, OutboxEntry.State.PUBLISHED.name());
+        stmt.setString(2, OutboxEntry.State.DUPLICATE.name());
+        stmt.setString(3, OutboxEntry.State.ABANDONED.name());
+        stmt.setLong(4, before);
+    }
+
+    /**
+     * Count the entries in every state.
+     *
+     * @return the number of entries, by state.
+     *
+     * @throws SQLException
+     */
+    public Map<OutboxEntry.State, Integer> count() throws SQLException {
+        Map<OutboxEntry.State, Integer> counts
+                = new EnumMap<>(OutboxEntry.State.class);
+        for (OutboxEntry.State state : OutboxEntry.State.values()) {
+            counts.put(state, 0);
+        }
+        synchronized (this.database) {
+            try (ResultSet res = this.database.prepare(""
+                    + "SELECT state, COUNT(id) AS cpt FROM outbox "
+                    + "GROUP BY state;").executeQuery()) {
+                while (res.next()) {
+                    counts.put(OutboxEntry.State.valueOf(
+                            res.getString("state")), res.getInt("cpt"));
+                }
+            }
+        }
+        return counts;
+    }
+}
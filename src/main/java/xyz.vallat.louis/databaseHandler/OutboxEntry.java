@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+/**
+ * A post waiting in the outbox to be published.
+ *
+ * @author louis
+ */
+public final class OutboxEntry {
+
+    /**
+     * States of an entry.
+     */
+    public enum State {
+        /**
+         * The post has been claimed, its media isn't downloaded yet.
+         */
+        DISCOVERED,
+        /**
+         * The media of the post has been downloaded.
+         */
+        MEDIA_FETCHED,
+        /**
+         * The post has been published on all the social medias.
+         */
+        PUBLISHED,
+        /**
+         * The last attempt failed or was rate limited, the post will be tried
+         * again later.
+         */
+        FAILED,
+        /**
+         * The post failed too many times and won't be tried again.
+         */
+        ABANDONED,
+        /**
+         * The image of the post has already been published with another post.
+         */
+        DUPLICATE
+    }
+
+    /**
+     * Entry id.
+     */
+    private final long id;
+
+    /**
+     * Subreddit the post comes from.
+     */
+    private final String subreddit;
+
+    /**
+     * Reddit post id.
+     */
+    private final String postId;
+
+    /**
+     * Post title.
+     */
+    private final String title;
+
+    /**
+     * Post author.
+     */
+    private final String author;
+
+    /**
+     * Post permalink.
+     */
+    private final String permalink;
+
+    /**
+     * Post media url.
+     */
+    private final String url;
+
+    /**
+     * Entry state.
+     */
+    private final State state;
+
+    /**
+     * Path to the downloaded media, or null.
+     */
+    private final String mediaPath;
+
+    /**
+     * How many attempts already failed.
+     */
+    private final int attempts;
+
+    /**
+     * Perceptual hash of the media, or null if it isn't hashed yet.
+     */
+    private final Long imageHash;
+
+    /**
+     * When the entry was added to the outbox, in milliseconds.
+     */
+    private final long createdAt;
+
+    /**
+     * Main constructor.
+     *
+     * @param id entry id.
+     * @param subreddit subreddit the post comes from.
+     * @param postId reddit post id.
+     * @param title post title.
+     * @param author post author.
+     * @param permalink post permalink.
+     * @param url post media url.
+     * @param state entry state.
+     * @param mediaPath path to the downloaded media, or null.
+     * @param attempts how many attempts already failed.
+     * @param imageHash perceptual hash of the media, or null.
+     * @param createdAt when the entry was added, in milliseconds.
+     */
+    OutboxEntry(long id, String subreddit, String postId, String title,
+            String author, String permalink, String url, State state,
+            String mediaPath, int attempts, Long imageHash, long createdAt) {
+        this.id = id;
+        this.subreddit = subreddit;
+        this.postId = postId;
+        this.title = title;
+        this.author = author;
+        this.permalink = permalink;
+        this.url = url;
+        this.state = state;
+        this.mediaPath = mediaPath;
+        this.attempts = attempts;
+        this.imageHash = imageHash;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Get the entry id.
+     *
+     * @return the id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Get the subreddit the post comes from.
+     *
+     * @return the subreddit.
+     */
+    public String getSubreddit() {
+        return subreddit;
+    }
+
+    /**
+     * Get the reddit post id.
+     *
+     * @return the post id.
+     */
+    public String getPostId() {
+        return postId;
+    }
+
+    /**
+     * Get the post title.
+     *
+     * @return the title.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the post author.
+     *
+     * @return the author.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Get the post permalink.
+     *
+     * @return the permalink.
+     */
+    public String getPermalink() {
+        return permalink;
+    }
+
+    /**
+     * Get the post media url.
+     *
+     * @return the url.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the entry state.
+     *
+     * @return the state.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get the path to the downloaded media.
+     *
+     * @return the path, or null.
+     */
+    public String getMediaPath() {
+        return mediaPath;
+    }
+
+    /**
+     * Get how many attempts already failed.
+     *
+     * @return the failed attempts.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the perceptual hash of the media.
+     *
+     * @return the hash, or null if it isn't hashed yet.
+     */
+    public Long getImageHash() {
+        return imageHash;
+    }
+
+    /**
+     * Get when the entry was added to the outbox.
+     *
+     * @return the time, in milliseconds.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxEntry{" + "id=" + id + ", subreddit=" + subreddit
+                + ", postId=" + postId + ", state=" + state
+                + ", attempts=" + attempts + '}';
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+import xyz.vallat.louis.metricsHandler.Histogram;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import xyz.vallat.louis.redditHandler.RedditPost;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The table where the already parsed reddit posts are saved.
+ *
+ * @author louis
+ */
+public final class PostsTable {
+
+    /**
+     * Connection to the SQLITE database.
+     */
+    private final DatabaseConnection database;
+
+    /**
+     * SQLITE table name.
+     */
+    private final String tableName;
+
+    /**
+     * Query to look for a post id.
+     */
+    private final String lookupQuery;
+
+    /**
+     * Query to insert a post, unless its post id is already in the table.
+     */
+    private final String insertQuery;
+
+    /**
+     * Query to count the posts.
+     */
+    private final String countQuery;
+
+    /**
+     * Index of the posts already in the table.
+     */
+    private SeenPostIndex seenPosts;
+
+    /**
+     * Main constructor.
+     *
+     * @param database the database connection.
+     * @param tableName the table name.
+     */
+    public PostsTable(DatabaseConnection database, String tableName) {
+        this.database = database;
+        this.tableName = tableName;
+        this.lookupQuery = "SELECT 1 FROM " + tableName + " "
+                + "WHERE postId = ? LIMIT 1;";
+        this.insertQuery = "INSERT OR IGNORE INTO " + tableName
+                + "("
+                + "postType, "
+                + "postId, "
+                + "title, "
+                + "quarantine, "
+                + "score, "
+                + "postHint, "
+                + "crosspostable, "
+                + "over18, "
+                + "author, "
+                + "permalink, "
+                + "spoiler, "
+                + "url, "
+                + "shared"
+                + ") "
+                + "VALUES "
+                + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+        this.countQuery = "SELECT COUNT(id) AS cpt FROM " + tableName + ";";
+    }
+
+    /**
+     * Create the table if it doesn't exists yet.
+     *
+     * @throws SQLException
+     */
+    public void create() throws SQLException {
+        synchronized (this.database) {
+            this.database.prepare(""
+                    + "CREATE TABLE IF NOT EXISTS " + this.tableName + " "
+                    + "("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + "postType TEXT, "
+                    + "postId TEXT UNIQUE, "
+                    + "title TEXT, "
+                    + "quarantine BOOLEAN, "
+                    + "score DOUBLE, "
+                    + "postHint TEXT, "
+                    + "crosspostable BOOLEAN, "
+                    + "over18 BOOLEAN, "
+                    + "author TEXT, "
+                    + "permalink TEXT, "
+                    + "spoiler BOOLEAN, "
+                    + "url TEXT, "
+                    + "shared BOOLEAN"
+                    + ");"
+            ).execute();
+            // The post ids used to be saved with their JSON quotes.
+            try (Statement stmt = this.database.getConnection()
+                    .createStatement()) {
+                stmt.execute("UPDATE OR IGNORE " + this.tableName + " "
+                        + "SET postId = substr(postId, 2, length(postId) - 2) "
+                        + "WHERE substr(postId, 1, 1) = '\"';");
+            }
+        }
+    }
+
+    /**
+     * Clear the table by dropping it and creating it again.
+     *
+     * @throws SQLException
+     */
+    public void clear() throws SQLException {
+        synchronized (this.database) {
+            try (Statement stmt = this.database.getConnection()
+                    .createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + this.tableName + ";");
+            }
+        }
+        create();
+    }
+
+    /**
+     * Count the posts in the table.
+     *
+     * @return the number of posts.
+     *
+     * @throws SQLException
+     */
+    public int count() throws SQLException {
+        synchronized (this.database) {
+            try (ResultSet res = this.database.prepare(this.countQuery)
+                    .executeQuery()) {
+                res.next();
+                return res.getInt("cpt");
+            }
+        }
+    }
+
+    /**
+     * Load all the post ids of the table into the seen-post index.
+     *
+     * @param recentPosts how many recent post ids the index keeps.
+     *
+     * @throws SQLException
+     */
+    public void load(int recentPosts) throws SQLException {
+        int count = count();
+        System.out.println("[*] " + count + " posts in database.");
+        SeenPostIndex index = new SeenPostIndex(
+                Math.max(2 * count, 100000), recentPosts);
+        synchronized (this.database) {
+            try (ResultSet res = this.database.prepare(
+                    "SELECT postId FROM " + this.tableName + " ORDER BY id;")
+                    .executeQuery()) {
+                while (res.next()) {
+                    index.add(res.getString("postId"));
+                }
+            }
+        }
+        this.seenPosts = index;
+        System.out.println("[*] Seen-post index loaded.");
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        metrics.gauge("seen_index_hits", () -> this.seenPosts.getHits(),
+                "table", this.tableName);
+        metrics.gauge("seen_index_misses", () -> this.seenPosts.getMisses(),
+                "table", this.tableName);
+        metrics.gauge("seen_index_database_lookups",
+                () -> this.seenPosts.getDatabaseLookups(),
+                "table", this.tableName);
+    }
+
+    /**
+     * Check if a post is in the table. The seen-post index is asked first, so
+     * only the posts it can't tell about are looked for in the database.
+     *
+     * @param postId the post id
+     * @return if the post is in the table
+     *
+     * @throws SQLException
+     */
+    public boolean contains(String postId) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return lookup(postId);
+        } finally {
+            MetricsRegistry.getSingleton().timer("dedup_lookup_seconds",
+                    "table", this.tableName).recordSince(start);
+        }
+    }
+
+    /**
+     * Look for a post id, in the seen-post index then in the database.
+     *
+     * @param postId the post id
+     * @return if the post is in the table
+     *
+     * @throws SQLException
+     */
+    private boolean lookup(String postId) throws SQLException {
+        switch (this.seenPosts.lookup(postId)) {
+            case SEEN:
+                return true;
+            case UNSEEN:
+                return false;
+            default:
+                break;
+        }
+        boolean found;
+        synchronized (this.database) {
+            PreparedStatement recherche = this.database.prepare(this.lookupQuery);
+            recherche.setString(1, postId);
+            try (ResultSet resultats = recherche.executeQuery()) {
+                found = resultats.next();
+            }
+        }
+        if (found) {
+            this.seenPosts.add(postId);
+        }
+        return found;
+    }
+
+    /**
+     * Claim the new posts of a listing. All the posts the seen-post index
+     * doesn't know for sure are inserted in one transaction, and the ones
+     * that were not in the table yet are returned. Two claims can't return
+     * the same post.
+     *
+     * @param listing the posts of a listing.
+     * @param shareable which posts are going to be shared.
+     * @return the posts that were not in the table, in the listing order.
+     *
+     * @throws SQLException
+     */
+    public List<RedditPost> claim(Collection<RedditPost> listing,
+            Predicate<RedditPost> shareable) throws SQLException {
+        return claim(listing, shareable, null);
+    }
+
+    /**
+     * Claim the new posts of a listing, and add the ones that are going to be
+     * shared to the outbox in the same transaction, so a claimed post can't
+     * be lost before it is published.
+     *
+     * @param listing the posts of a listing.
+     * @param shareable which posts are going to be shared.
+     * @param outbox the outbox, or null.
+     * @return the posts that were not in the table, in the listing order.
+     *
+     * @throws SQLException
+     */
+    public List<RedditPost> claim(Collection<RedditPost> listing,
+            Predicate<RedditPost> shareable, Outbox outbox)
+            throws SQLException {
+        List<RedditPost> claimed = new ArrayList<>();
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        Histogram lookups = metrics.timer("dedup_lookup_seconds",
+                "table", this.tableName);
+        long lookupTime = 0;
+        long start = System.nanoTime();
+        synchronized (this.database) {
+            Connection connection = this.database.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement ajout = this.database.prepare(this.insertQuery);
+                for (RedditPost current : listing) {
+                    // A post the index can't tell about is looked up by the
+                    // INSERT OR IGNORE, and counted as a database lookup.
+                    long lookup = System.nanoTime();
+                    boolean seen = this.seenPosts.lookup(current.getPostId())
+                            == SeenPostIndex.Lookup.SEEN;
+                    lookup = System.nanoTime() - lookup;
+                    lookups.record(lookup);
+                    lookupTime += lookup;
+                    if (seen) {
+                        continue;
+                    }
+                    boolean shared = shareable.test(current);
+                    bind(ajout, current, shared);
+                    if (ajout.executeUpdate() == 1) {
+                        claimed.add(current);
+                        if (shared && outbox != null) {
+                            outbox.add(this.tableName, current);
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        // The inserts of the batch and their commit.
+        metrics.timer("db_insert_seconds", "table", this.tableName)
+                .record(System.nanoTime() - start - lookupTime);
+        for (RedditPost current : listing) {
+            this.seenPosts.add(current.getPostId());
+        }
+        return claimed;
+    }
+
+    /**
+     * Bind a given reddit post to the insert query.
+     *
+     * @param ajout the insert query.
+     * @param current the reddit post.
+     * @param shared if the post is going to be shared.
+     *
+     * @throws SQLException
+     */
+    private static void bind(PreparedStatement ajout, RedditPost current,
+            boolean shared) throws SQLException {
+        ajout.setString(1, current.getType().name().toLowerCase());
+        ajout.setString(2, current.getPostId());
+        ajout.setString(3, current.getTitle());
+        ajout.setBoolean(4, current.isQuarantine());
+        ajout.setDouble(5, current.getScore());
+        ajout.setString(6, current.getPostHint());
+        ajout.setBoolean(7, current.isCrosspostable());
+        ajout.setBoolean(8, current.isOver18());
+        ajout.setString(9, current.getAuthor());
+        ajout.setString(10, current.getPermalink());
+        ajout.setBoolean(11, current.isSpoiler());
+        ajout.setString(12, current.getUrl());
+        ajout.setBoolean(13, shared);
+    }
+
+    /**
+     * Get the seen-post index of the table.
+     *
+     * @return the index.
+     */
+    public SeenPostIndex getSeenPosts() {
+        return seenPosts;
+    }
+
+    /**
+     * Get the table name.
+     *
+     * @return the table name.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.databaseHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory index of the posts already in the database. A Bloom filter answers
+ * for the posts we have never seen, and a bounded LRU of the most recent post
+ * ids answers for the ones we see again and again in the listings. Only the
+ * remaining cases have to be checked against the database.
+ *
+ * @author louis
+ */
+public final class SeenPostIndex {
+
+    /**
+     * Result of a lookup in the index.
+     */
+    public enum Lookup {
+        /**
+         * The post is known for sure.
+         */
+        SEEN,
+        /**
+         * The post has never been seen for sure.
+         */
+        UNSEEN,
+        /**
+         * The index can't tell, the database has to be checked.
+         */
+        MAYBE
+    }
+
+    /**
+     * False positive rate of the Bloom filter.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Bloom filter of all the known post ids.
+     */
+    private final BloomFilter filter;
+
+    /**
+     * The most recently seen post ids, in access order.
+     */
+    private final LinkedHashMap<String, Boolean> recent;
+
+    /**
+     * Lookups answered by the LRU.
+     */
+    private long hits;
+
+    /**
+     * Lookups answered by the Bloom filter.
+     */
+    private long misses;
+
+    /**
+     * Lookups that had to go to the database.
+     */
+    private long databaseLookups;
+
+    /**
+     * Create a new index.
+     *
+     * @param expectedPosts how many posts we expect the index to hold.
+     * @param recentPosts how many recent post ids the LRU keeps.
+     */
+    public SeenPostIndex(int expectedPosts, final int recentPosts) {
+        this.filter = new BloomFilter(expectedPosts, FALSE_POSITIVE_RATE);
+        this.recent = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Boolean> eldest) {
+                return size() > recentPosts;
+            }
+        };
+    }
+
+    /**
+     * Look for a post id in the index.
+     *
+     * @param postId the post id.
+     * @return what the index knows about this post.
+     */
+    public synchronized Lookup lookup(String postId) {
+        if (recent.get(postId) != null) {
+            hits++;
+            return Lookup.SEEN;
+        }
+        if (!filter.mightContain(postId)) {
+            misses++;
+            return Lookup.UNSEEN;
+        }
+        databaseLookups++;
+        return Lookup.MAYBE;
+    }
+
+    /**
+     * Add a post id to the index.
+     *
+     * @param postId the post id.
+     */
+    public synchronized void add(String postId) {
+        filter.put(postId);
+        recent.put(postId, Boolean.TRUE);
+    }
+
+    /**
+     * Get the number of lookups answered by the LRU.
+     *
+     * @return the hit count.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups answered by the Bloom filter.
+     *
+     * @return the miss count.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of lookups that had to go to the database.
+     *
+     * @return the database lookup count.
+     */
+    public synchronized long getDatabaseLookups() {
+        return databaseLookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hits + " hits, " + misses + " misses, "
+                + databaseLookups + " database lookups";
+    }
+}
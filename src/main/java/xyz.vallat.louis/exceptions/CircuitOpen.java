@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.exceptions;
+
+/**
+ * Exception throwable when a request isn't sent because the circuit breaker
+ * of its target is open.
+ *
+ * @author louis
+ */
+public class CircuitOpen extends Exception {
+
+    /**
+     * Creates a new instance of <code>CircuitOpen</code> without detail
+     * message.
+     */
+    public CircuitOpen() {
+    }
+
+    /**
+     * Constructs an instance of <code>CircuitOpen</code> with the specified
+     * detail message.
+     *
+     * @param msg the detail message.
+     */
+    public CircuitOpen(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.exceptions;
+
+/**
+ * Exception throwable when a call to a social media isn't sent because its
+ * budget is exhausted. Unlike a failure, the call can be sent again once the
+ * budget is back.
+ *
+ * @author louis
+ */
+public class RateLimited extends RuntimeException {
+
+    /**
+     * When the budget is back, in milliseconds.
+     */
+    private final long retryAt;
+
+    /**
+     * Constructs an instance of <code>RateLimited</code> with the specified
+     * detail message.
+     *
+     * @param msg the detail message.
+     * @param retryAt when the budget is back, in milliseconds.
+     */
+    public RateLimited(String msg, long retryAt) {
+        super(msg);
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * Get when the budget is back.
+     *
+     * @return the time, in milliseconds.
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+}
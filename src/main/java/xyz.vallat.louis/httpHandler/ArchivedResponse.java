@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A response saved in an archive, one JSON object per line.
+ *
+ * @author louis
+ */
+final class ArchivedResponse {
+
+    /**
+     * The JSON serializer of the archives.
+     */
+    static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * When the response was received, in milliseconds.
+     */
+    private final long time;
+
+    /**
+     * The requested URL.
+     */
+    private final String url;
+
+    /**
+     * The response status code.
+     */
+    private final int status;
+
+    /**
+     * The response headers the bot reads.
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The decompressed body, or null if there was none.
+     */
+    private final String body;
+
+    /**
+     * Main constructor.
+     *
+     * @param time when the response was received, in milliseconds.
+     * @param url the requested URL.
+     * @param status the response status code.
+     * @param headers the response headers the bot reads.
+     * @param body the decompressed body, or null if there was none.
+     */
+    ArchivedResponse(long time, String url, int status,
+            Map<String, String> headers, String body) {
+        this.time = time;
+        this.url = url;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Build the response to replay.
+     *
+     * @param requestedUrl the URL requested during the replay.
+     * @return the response.
+     */
+    HttpResponse toResponse(String requestedUrl) {
+        return new HttpResponse(requestedUrl, this.status,
+                this.headers == null
+                        ? Collections.<String, String>emptyMap() : this.headers,
+                this.body == null
+                        ? null : this.body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get when the response was received.
+     *
+     * @return the time, in milliseconds.
+     */
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the requested URL.
+     *
+     * @return the URL.
+     */
+    String getUrl() {
+        return url;
+    }
+}
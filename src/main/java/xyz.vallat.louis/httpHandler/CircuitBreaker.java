@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+
+/**
+ * Circuit breaker of a remote service. After too many failures in a row the
+ * circuit opens and no request is sent for a while. Then a single request is
+ * let through: if it succeeds the circuit closes, otherwise it opens again.
+ *
+ * @author louis
+ */
+public final class CircuitBreaker {
+
+    /**
+     * States of a circuit.
+     */
+    public enum State {
+        /**
+         * Requests are sent.
+         */
+        CLOSED,
+        /**
+         * A single request is being tried.
+         */
+        HALF_OPEN,
+        /**
+         * No request is sent.
+         */
+        OPEN
+    }
+
+    /**
+     * Name of the service, for the logs and the metrics.
+     */
+    private final String name;
+
+    /**
+     * How many failures in a row open the circuit.
+     */
+    private final int failureThreshold;
+
+    /**
+     * How long the circuit stays open, in milliseconds.
+     */
+    private final long openDelay;
+
+    /**
+     * Current state.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Failures in a row.
+     */
+    private int failures;
+
+    /**
+     * Until when the circuit stays open, in milliseconds.
+     */
+    private long openUntil;
+
+    /**
+     * Main constructor.
+     *
+     * @param name name of the service.
+     * @param failureThreshold how many failures in a row open the circuit.
+     * @param openDelay how long the circuit stays open, in seconds.
+     */
+    public CircuitBreaker(String name, int failureThreshold, int openDelay) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDelay = openDelay * 1000L;
+        MetricsRegistry.getSingleton().gauge("circuit_breaker_state",
+                () -> getState().ordinal(), "target", name);
+    }
+
+    /**
+     * Check if a request can be sent. Once the open delay is over, a single
+     * request is allowed until its outcome is recorded.
+     *
+     * @return if the request can be sent.
+     */
+    public synchronized boolean allowRequest() {
+        switch (this.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() >= this.openUntil) {
+                    this.state = State.HALF_OPEN;
+                    System.out.println("[*] Trying " + this.name + " again.");
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Record a successful request.
+     */
+    public synchronized void recordSuccess() {
+        if (this.state != State.CLOSED) {
+            System.out.println("[+] " + this.name + " is back, closing its "
+                    + "circuit.");
+        }
+        this.state = State.CLOSED;
+        this.failures = 0;
+    }
+
+    /**
+     * Record a failed request.
+     */
+    public synchronized void recordFailure() {
+        this.failures++;
+        if (this.state == State.HALF_OPEN
+                || this.failures >= this.failureThreshold) {
+            open(this.openDelay);
+        }
+    }
+
+    /**
+     * Open the circuit for a given time, because the service asked for it.
+     * The circuit stays open at least until the end of its current delay.
+     *
+     * @param delay how long the circuit stays open, in milliseconds.
+     */
+    public synchronized void openFor(long delay) {
+        open(Math.max(delay, this.openUntil - System.currentTimeMillis()));
+    }
+
+    /**
+     * Open the circuit.
+     *
+     * @param delay how long the circuit stays open, in milliseconds.
+     */
+    private void open(long delay) {
+        this.state = State.OPEN;
+        this.openUntil = System.currentTimeMillis() + delay;
+        MetricsRegistry.getSingleton().counter("circuit_breaker_opened_total",
+                "target", this.name).increment();
+        System.err.println("[!] " + this.name + " is failing, no request for "
+                + delay / 1000 + " seconds.");
+    }
+
+    /**
+     * Get the current state. An open circuit whose delay is over is still
+     * reported open until a request is allowed.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the name of the service.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+}
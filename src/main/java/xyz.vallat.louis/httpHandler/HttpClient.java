@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * HTTP client shared by all the requests of the bot. Connections are kept
+ * alive and reused between requests to the same host, responses are asked
+ * compressed and decompressed while they are read, and every request has a
+ * connect and a read timeout. The requests are blocking: the scans and the
+ * pipeline stages already send them from their own pools, on virtual threads
+ * when they are enabled, so an async API would only add a hop.
+ *
+ * @author louis
+ */
+public class HttpClient {
+
+    /**
+     * Reads a response.
+     *
+     * @param <T> what is read.
+     */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+
+        /**
+         * Read a response.
+         *
+         * @param response the response.
+         * @return what was read.
+         *
+         * @throws IOException
+         */
+        T handle(HttpResponse response) throws IOException;
+    }
+
+    /**
+     * User agent sent with every request.
+     */
+    private static final String USER_AGENT = "Mozilla 5.0 (Windows; U; "
+            + "Windows NT 5.1; en-US; rv:1.8.0.11) ";
+
+    /**
+     * Connect timeout, in milliseconds.
+     */
+    private final int connectTimeout;
+
+    /**
+     * Read timeout, in milliseconds.
+     */
+    private final int readTimeout;
+
+    /**
+     * Main constructor. The number of idle connections kept per host is a JVM
+     * wide setting, so it is set the first time a client is built.
+     *
+     * @param connectTimeout connect timeout, in seconds.
+     * @param readTimeout read timeout, in seconds.
+     * @param maxConnections idle connections kept alive per host.
+     */
+    public HttpClient(int connectTimeout, int readTimeout,
+            int maxConnections) {
+        this.connectTimeout = connectTimeout * 1000;
+        this.readTimeout = readTimeout * 1000;
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections",
+                    String.valueOf(maxConnections));
+        }
+    }
+
+    /**
+     * Constructor of the clients that never connect to anything.
+     */
+    HttpClient() {
+        this.connectTimeout = 0;
+        this.readTimeout = 0;
+    }
+
+    /**
+     * Send a GET request.
+     *
+     * @param url the URL.
+     * @param headers the request headers.
+     * @return the response, to close once read.
+     *
+     * @throws IOException
+     */
+    public HttpResponse get(String url, Map<String, String> headers)
+            throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url)
+                .openConnection();
+        con.setRequestMethod("GET");
+        con.setConnectTimeout(this.connectTimeout);
+        con.setReadTimeout(this.readTimeout);
+        con.setRequestProperty("User-Agent", USER_AGENT);
+        con.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            con.setRequestProperty(header.getKey(), header.getValue());
+        }
+        try {
+            return new HttpResponse(url, con);
+        } catch (IOException ex) {
+            con.disconnect();
+            throw ex;
+        }
+    }
+
+    /**
+     * Send a GET request and read its response. The response is closed once
+     * read.
+     *
+     * @param <T> what is read.
+     * @param url the URL.
+     * @param headers the request headers.
+     * @param handler reads the response.
+     * @return what was read.
+     *
+     * @throws IOException
+     */
+    public <T> T get(String url, Map<String, String> headers,
+            ResponseHandler<T> handler) throws IOException {
+        try (HttpResponse response = get(url, headers)) {
+            return handler.handle(response);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import xyz.vallat.louis.metricsHandler.CountingInputStream;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response of the HTTP client. The body is decompressed while it is read.
+ * Closing the response reads what is left of the body, so the connection goes
+ * back to the keep-alive pool instead of being closed. A response can also be
+ * built from memory, to replay a recorded one.
+ *
+ * @author louis
+ */
+public final class HttpResponse implements Closeable {
+
+    /**
+     * Size of the buffer of the decompression.
+     */
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * How many bytes left in a body are read to keep its connection. Beyond
+     * that, the connection is closed.
+     */
+    private static final int DRAIN_LIMIT = 1 << 16;
+
+    /**
+     * The requested URL.
+     */
+    private final String url;
+
+    /**
+     * The connection, or null for a response built from memory.
+     */
+    private final HttpURLConnection connection;
+
+    /**
+     * The headers of a response built from memory.
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The response status code.
+     */
+    private final int statusCode;
+
+    /**
+     * The body as sent by the server.
+     */
+    private final InputStream rawBody;
+
+    /**
+     * The decompressed body.
+     */
+    private InputStream body;
+
+    /**
+     * Build the response of a connection.
+     *
+     * @param url the requested URL.
+     * @param connection the connection.
+     *
+     * @throws IOException
+     */
+    HttpResponse(String url, HttpURLConnection connection) throws IOException {
+        this.url = url;
+        this.connection = connection;
+        this.headers = null;
+        this.statusCode = connection.getResponseCode();
+        InputStream in = this.statusCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getErrorStream() : connection.getInputStream();
+        this.rawBody = in == null ? null : new CountingInputStream(in,
+                MetricsRegistry.getSingleton().counter(
+                        "http_bytes_received_total",
+                        "host", connection.getURL().getHost()));
+    }
+
+    /**
+     * Build a response from memory. The body is already decompressed.
+     *
+     * @param url the requested URL.
+     * @param statusCode the response status code.
+     * @param headers the response headers.
+     * @param body the body, or null if there is none.
+     */
+    HttpResponse(String url, int statusCode, Map<String, String> headers,
+            byte[] body) {
+        this.url = url;
+        this.connection = null;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.headers.putAll(headers);
+        this.statusCode = statusCode;
+        this.rawBody = body == null ? null : new ByteArrayInputStream(body);
+        this.body = this.rawBody;
+    }
+
+    /**
+     * Get the response status code.
+     *
+     * @return the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Throw an exception if the response status is an error.
+     *
+     * @return the response status code.
+     *
+     * @throws HttpStatusException
+     */
+    public int checkStatus() throws HttpStatusException {
+        if (this.statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            throw new HttpStatusException(this.url, this.statusCode,
+                    HttpStatusException.parseRetryAfter(
+                            getHeader("Retry-After")));
+        }
+        return this.statusCode;
+    }
+
+    /**
+     * Get a response header.
+     *
+     * @param name the header name.
+     * @return the header value, or null.
+     */
+    public String getHeader(String name) {
+        return this.connection == null ? this.headers.get(name)
+                : this.connection.getHeaderField(name);
+    }
+
+    /**
+     * Check if the response has a body.
+     *
+     * @return if it has a body.
+     */
+    public boolean hasBody() {
+        return this.rawBody != null;
+    }
+
+    /**
+     * Get the body, decompressed if the server compressed it.
+     *
+     * @return the body.
+     *
+     * @throws IOException
+     */
+    public InputStream getBody() throws IOException {
+        if (this.body == null) {
+            if (this.rawBody == null) {
+                throw new IOException("There is no body in the response to "
+                        + this.url + ".");
+            }
+            this.body = "gzip".equalsIgnoreCase(getHeader("Content-Encoding"))
+                    ? new GZIPInputStream(this.rawBody, GZIP_BUFFER_SIZE)
+                    : this.rawBody;
+        }
+        return this.body;
+    }
+
+    /**
+     * Release the connection. It goes back to the pool if the rest of the
+     * body is small enough to be read, otherwise it is closed.
+     */
+    @Override
+    public void close() {
+        if (this.rawBody == null || this.connection == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[8192];
+            long drained = 0;
+            int n;
+            while (drained <= DRAIN_LIMIT
+                    && (n = this.rawBody.read(buffer)) != -1) {
+                drained += n;
+            }
+            this.rawBody.close();
+            if (drained > DRAIN_LIMIT) {
+                this.connection.disconnect();
+            }
+        } catch (IOException ex) {
+            this.connection.disconnect();
+        }
+    }
+}
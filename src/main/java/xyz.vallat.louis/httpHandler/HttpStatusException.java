@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import java.io.IOException;
+
+/**
+ * Exception throwable when a server answers with an error status.
+ *
+ * @author louis
+ */
+public class HttpStatusException extends IOException {
+
+    /**
+     * The response status code.
+     */
+    private final int statusCode;
+
+    /**
+     * How long the server asked to wait before retrying, in seconds, or -1.
+     */
+    private final long retryAfter;
+
+    /**
+     * Constructs an instance of <code>HttpStatusException</code>.
+     *
+     * @param url the requested URL.
+     * @param statusCode the response status code.
+     * @param retryAfter how long the server asked to wait before retrying, in
+     * seconds, or -1.
+     */
+    public HttpStatusException(String url, int statusCode, long retryAfter) {
+        super("HTTP " + statusCode + " on " + url + ".");
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Get the response status code.
+     *
+     * @return the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get how long the server asked to wait before retrying.
+     *
+     * @return the delay in seconds, or -1 if the server didn't tell.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Check if the request can succeed later: server errors, timeouts and too
+     * many requests.
+     *
+     * @return if the request can be retried.
+     */
+    public boolean isRetryable() {
+        return statusCode >= 500 || statusCode == 429 || statusCode == 408;
+    }
+
+    /**
+     * Parse a Retry-After header. Only the delay in seconds form is read, and
+     * a date is ignored.
+     *
+     * @param header the header value, may be null.
+     * @return the delay in seconds, or -1.
+     */
+    public static long parseRetryAfter(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(header.trim()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
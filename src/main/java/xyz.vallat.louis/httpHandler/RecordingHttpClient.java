@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP client saving every response it receives to a gzipped archive, named
+ * after the time the recording started. The archive is flushed after every
+ * response, so it can be replayed even if the bot is killed.
+ *
+ * @author louis
+ */
+public final class RecordingHttpClient extends HttpClient {
+
+    /**
+     * The response headers saved with the body.
+     */
+    private static final String[] HEADERS = {
+        "ETag", "Last-Modified", "Retry-After"
+    };
+
+    /**
+     * The archive file.
+     */
+    private final File archive;
+
+    /**
+     * Writer of the archive.
+     */
+    private final Writer out;
+
+    /**
+     * Main constructor.
+     *
+     * @param connectTimeout connect timeout, in seconds.
+     * @param readTimeout read timeout, in seconds.
+     * @param maxConnections idle connections kept alive per host.
+     * @param directory where the archives are saved.
+     *
+     * @throws IOException
+     */
+    public RecordingHttpClient(int connectTimeout, int readTimeout,
+            int maxConnections, File directory) throws IOException {
+        super(connectTimeout, readTimeout, maxConnections);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create the recordings folder "
+                    + directory + ".");
+        }
+        this.archive = new File(directory, "reddit-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + ".jsonl.gz");
+        this.out = new OutputStreamWriter(new GZIPOutputStream(
+                new FileOutputStream(this.archive), 1 << 16, true),
+                StandardCharsets.UTF_8);
+        System.out.println("[*] Recording the Reddit responses to "
+                + this.archive + ".");
+    }
+
+    /**
+     * Send a GET request, and save its response. The body is read whole, so
+     * it can be both saved and read by the caller.
+     *
+     * @param url the URL.
+     * @param headers the request headers.
+     * @return the response.
+     *
+     * @throws IOException
+     */
+    @Override
+    public HttpResponse get(String url, Map<String, String> headers)
+            throws IOException {
+        int status;
+        Map<String, String> saved = new HashMap<>();
+        byte[] body = null;
+        try (HttpResponse response = super.get(url, headers)) {
+            status = response.getStatusCode();
+            for (String name : HEADERS) {
+                String value = response.getHeader(name);
+                if (value != null) {
+                    saved.put(name, value);
+                }
+            }
+            if (response.hasBody()) {
+                body = readAll(response.getBody());
+            }
+        }
+        save(new ArchivedResponse(System.currentTimeMillis(), url, status,
+                saved, body == null
+                        ? null : new String(body, StandardCharsets.UTF_8)));
+        return new HttpResponse(url, status, saved, body);
+    }
+
+    /**
+     * Append a response to the archive.
+     *
+     * @param response the response.
+     *
+     * @throws IOException
+     */
+    private synchronized void save(ArchivedResponse response)
+            throws IOException {
+        this.out.write(ArchivedResponse.GSON.toJson(response));
+        this.out.write('\n');
+        this.out.flush();
+    }
+
+    /**
+     * Read a stream to its end.
+     *
+     * @param in the stream.
+     * @return what was read.
+     *
+     * @throws IOException
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the archive file.
+     *
+     * @return the archive.
+     */
+    public File getArchive() {
+        return archive;
+    }
+
+    /**
+     * Close the archive.
+     */
+    public synchronized void close() {
+        try {
+            this.out.close();
+        } catch (IOException ex) {
+            System.err.println("[!] Could not close the archive "
+                    + this.archive + ": " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import com.google.gson.JsonParseException;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client answering with the responses of recorded archives instead of
+ * the network. The replay has its own clock, starting at the first recorded
+ * response and running faster than the real one by the speed-up: every
+ * request gets the latest response recorded for its URL before that time, or
+ * a 304 Not Modified if there is no new one. The polling cursor is ignored
+ * when URLs are matched, so the cycles of a production run are reproduced
+ * even if the bot asks them at other times. With a speed-up of 0, every
+ * request gets the next recorded response at once.
+ *
+ * @author louis
+ */
+public final class ReplayHttpClient extends HttpClient {
+
+    /**
+     * The recorded responses by URL, in time order.
+     */
+    private final Map<String, List<ArchivedResponse>> responses
+            = new HashMap<>();
+
+    /**
+     * Position of the next response to replay, by URL.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * How much faster than the recording the replay runs.
+     */
+    private final double speedup;
+
+    /**
+     * Time of the first recorded response, in milliseconds.
+     */
+    private long firstTime = Long.MAX_VALUE;
+
+    /**
+     * When the replay started, in milliseconds.
+     */
+    private long start;
+
+    /**
+     * Load the archives to replay.
+     *
+     * @param archives an archive, or a folder of archives.
+     * @param speedup how much faster than the recording the replay runs, or 0
+     * to replay as fast as possible.
+     *
+     * @throws IOException
+     */
+    public ReplayHttpClient(File archives, double speedup) throws IOException {
+        this.speedup = speedup;
+        File[] files = archives.isDirectory()
+                ? archives.listFiles((dir, name) -> name.endsWith(".jsonl.gz"))
+                : new File[]{archives};
+        if (files == null || files.length == 0) {
+            throw new IOException("There is no archive to replay in "
+                    + archives + ".");
+        }
+        Arrays.sort(files);
+        int count = 0;
+        for (File f : files) {
+            count += load(f);
+        }
+        for (List<ArchivedResponse> list : this.responses.values()) {
+            list.sort(Comparator.comparingLong(ArchivedResponse::getTime));
+        }
+        System.out.println("[*] Replaying " + count + " responses from "
+                + files.length + " archives.");
+        MetricsRegistry.getSingleton().gauge("replay_remaining",
+                this::getRemaining);
+    }
+
+    /**
+     * Load an archive. An archive cut by a crash is read up to the cut.
+     *
+     * @param f the archive.
+     * @return how many responses were loaded.
+     *
+     * @throws IOException
+     */
+    private int load(File f) throws IOException {
+        int count = 0;
+        CutInputStream archive = new CutInputStream(
+                new GZIPInputStream(new FileInputStream(f)));
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                archive, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                ArchivedResponse response;
+                try {
+                    response = ArchivedResponse.GSON.fromJson(line,
+                            ArchivedResponse.class);
+                } catch (JsonParseException ex) {
+                    System.err.println("[!] Skipping a broken line of " + f
+                            + ".");
+                    continue;
+                }
+                this.responses.computeIfAbsent(key(response.getUrl()),
+                        k -> new ArrayList<>()).add(response);
+                this.firstTime = Math.min(this.firstTime, response.getTime());
+                count++;
+            }
+        }
+        if (archive.isCut()) {
+            System.out.println("[*] Archive " + f + " wasn't closed, "
+                    + "replaying it up to its last response.");
+        }
+        return count;
+    }
+
+    /**
+     * Stream ending where an archive is cut. The archive of a recording that
+     * was killed has no end, and every response before is still readable.
+     */
+    private static final class CutInputStream extends FilterInputStream {
+
+        /**
+         * If the archive is cut.
+         */
+        private boolean cut;
+
+        /**
+         * Main constructor.
+         *
+         * @param in the decompressed archive.
+         */
+        CutInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (EOFException ex) {
+                this.cut = true;
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (EOFException ex) {
+                this.cut = true;
+                return -1;
+            }
+        }
+
+        /**
+         * Check if the archive is cut.
+         *
+         * @return if it is cut.
+         */
+        boolean isCut() {
+            return cut;
+        }
+    }
+
+    /**
+     * Answer a GET request with a recorded response.
+     *
+     * @param url the URL.
+     * @param headers the request headers, ignored.
+     * @return the response.
+     */
+    @Override
+    public synchronized HttpResponse get(String url,
+            Map<String, String> headers) {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        String key = key(url);
+        List<ArchivedResponse> list = this.responses.get(key);
+        if (list == null) {
+            metrics.counter("replay_responses_total", "result", "missing")
+                    .increment();
+            return new HttpResponse(url, HttpURLConnection.HTTP_NOT_FOUND,
+                    Collections.<String, String>emptyMap(), null);
+        }
+        long now = System.currentTimeMillis();
+        if (this.start == 0) {
+            this.start = now;
+        }
+        int position = this.positions.getOrDefault(key, 0);
+        int next = position;
+        if (position > 0 && this.speedup > 0) {
+            // Skip to the latest response recorded before the replay clock.
+            double clock = this.firstTime + (now - this.start) * this.speedup;
+            next = position - 1;
+            while (next + 1 < list.size()
+                    && list.get(next + 1).getTime() <= clock) {
+                next++;
+            }
+            if (next < position) {
+                next = list.size();
+            }
+        }
+        if (next >= list.size()) {
+            metrics.counter("replay_responses_total", "result", "not_modified")
+                    .increment();
+            return new HttpResponse(url, HttpURLConnection.HTTP_NOT_MODIFIED,
+                    Collections.<String, String>emptyMap(), null);
+        }
+        if (next > position) {
+            metrics.counter("replay_skipped_total").add(next - position);
+        }
+        this.positions.put(key, next + 1);
+        metrics.counter("replay_responses_total", "result", "served")
+                .increment();
+        return list.get(next).toResponse(url);
+    }
+
+    /**
+     * Check if every recorded response has been replayed or skipped.
+     *
+     * @return if the replay is over.
+     */
+    public synchronized boolean isFinished() {
+        return getRemaining() == 0;
+    }
+
+    /**
+     * Get how many responses are left to replay.
+     *
+     * @return how many responses are left.
+     */
+    private synchronized int getRemaining() {
+        int remaining = 0;
+        for (Map.Entry<String, List<ArchivedResponse>> entry
+                : this.responses.entrySet()) {
+            remaining += entry.getValue().size()
+                    - this.positions.getOrDefault(entry.getKey(), 0);
+        }
+        return remaining;
+    }
+
+    /**
+     * Get the key matching a URL to its recorded responses, the URL without
+     * the polling cursor.
+     *
+     * @param url the URL.
+     * @return the key.
+     */
+    private static String key(String url) {
+        return url.replaceAll("([?&])before=[^&]*&?", "$1")
+                .replaceAll("[?&]$", "");
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.httpHandler;
+
+import xyz.vallat.louis.exceptions.CircuitOpen;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of the requests to a remote service. A failed request is tried
+ * again a bounded number of times, after an exponential backoff with full
+ * jitter, or after the delay the service asked for with Retry-After. All the
+ * requests to the service share a circuit breaker, so nothing is sent while
+ * it is down.
+ *
+ * @author louis
+ */
+public final class RetryPolicy {
+
+    /**
+     * A request that can fail.
+     *
+     * @param <T> the response type.
+     */
+    @FunctionalInterface
+    public interface Request<T> {
+
+        /**
+         * Send the request.
+         *
+         * @return the response.
+         *
+         * @throws IOException
+         */
+        T send() throws IOException;
+    }
+
+    /**
+     * How many times a request is sent at most.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Backoff before the first retry, in milliseconds.
+     */
+    private final long baseDelay;
+
+    /**
+     * Longest wait between two attempts, in milliseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * Circuit breaker of the service.
+     */
+    private final CircuitBreaker breaker;
+
+    /**
+     * Main constructor.
+     *
+     * @param maxAttempts how many times a request is sent at most.
+     * @param baseDelay backoff before the first retry, in milliseconds.
+     * @param maxDelay longest wait between two attempts, in milliseconds.
+     * @param breaker circuit breaker of the service.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay,
+            CircuitBreaker breaker) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Send a request, retrying it when it fails. Errors that won't go away by
+     * themselves, like a 404, are not retried. When the service asks to wait
+     * longer than the longest wait, the circuit is opened for that long
+     * instead. The calling thread sleeps between the attempts, so a shared
+     * thread should rather send the attempts itself and schedule the retries.
+     *
+     * @param <T> the response type.
+     * @param request the request.
+     * @return the response.
+     *
+     * @throws IOException
+     * @throws CircuitOpen
+     */
+    public <T> T execute(Request<T> request) throws IOException, CircuitOpen {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return send(request);
+            } catch (IOException ex) {
+                long delay = retryDelay(attempt, ex);
+                if (delay < 0) {
+                    throw ex;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interruption) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException interrupted
+                            = new InterruptedIOException("Interrupted while "
+                                    + "waiting to retry.");
+                    interrupted.initCause(ex);
+                    throw interrupted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a single attempt of a request, and record its outcome in the
+     * circuit breaker. Whatever the request throws counts as a failure, so a
+     * single request let through a half-open circuit always closes or opens
+     * it again.
+     *
+     * @param <T> the response type.
+     * @param request the request.
+     * @return the response.
+     *
+     * @throws IOException
+     * @throws CircuitOpen
+     */
+    public <T> T send(Request<T> request) throws IOException, CircuitOpen {
+        String target = this.breaker.getName();
+        if (!this.breaker.allowRequest()) {
+            MetricsRegistry.getSingleton().counter(
+                    "circuit_breaker_rejected_total", "target", target)
+                    .increment();
+            throw new CircuitOpen("The circuit of " + target + " is open.");
+        }
+        try {
+            T response = request.send();
+            this.breaker.recordSuccess();
+            return response;
+        } catch (HttpStatusException ex) {
+            if (!ex.isRetryable()) {
+                this.breaker.recordSuccess();
+                throw ex;
+            }
+            this.breaker.recordFailure();
+            if (ex.getRetryAfter() * 1000 > this.maxDelay) {
+                this.breaker.openFor(ex.getRetryAfter() * 1000);
+            }
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
+            this.breaker.recordFailure();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get how long to wait before the next attempt of a failed request: the
+     * delay the service asked for with Retry-After, or an exponential backoff
+     * with full jitter.
+     *
+     * @param attempt the failed attempt, from 1.
+     * @param failure why the attempt failed.
+     * @return the delay in milliseconds, or -1 to give up, when the error
+     * won't go away by itself, when there is no attempt left or when the
+     * circuit is open.
+     */
+    public long retryDelay(int attempt, IOException failure) {
+        long retryAfter = -1;
+        if (failure instanceof HttpStatusException) {
+            HttpStatusException status = (HttpStatusException) failure;
+            if (!status.isRetryable()
+                    || status.getRetryAfter() * 1000 > this.maxDelay) {
+                return -1;
+            }
+            retryAfter = status.getRetryAfter();
+        } else if (failure instanceof InterruptedIOException
+                && Thread.currentThread().isInterrupted()) {
+            return -1;
+        }
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        String target = this.breaker.getName();
+        if (attempt >= this.maxAttempts
+                || this.breaker.getState() == CircuitBreaker.State.OPEN) {
+            metrics.counter("http_failures_total", "target", target)
+                    .increment();
+            return -1;
+        }
+        long delay = retryAfter >= 0 ? retryAfter * 1000 : ThreadLocalRandom
+                .current().nextLong(backoffCeiling(attempt) + 1);
+        metrics.counter("http_retries_total", "target", target).increment();
+        System.err.println("[!] " + failure.getMessage());
+        System.out.println("[!] Retrying in " + delay + " ms (attempt "
+                + (attempt + 1) + "/" + this.maxAttempts + ").");
+        return delay;
+    }
+
+    /**
+     * Get the longest backoff after a failed attempt: the base delay doubled
+     * for every attempt, up to the longest wait.
+     *
+     * @param attempt the failed attempt, from 1.
+     * @return the backoff ceiling, in milliseconds.
+     */
+    long backoffCeiling(int attempt) {
+        return Math.min(this.maxDelay,
+                this.baseDelay << Math.min(attempt - 1, 30));
+    }
+
+    /**
+     * Get the circuit breaker of the service.
+     *
+     * @return the circuit breaker.
+     */
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Perceptual hash of an image, the difference hash. The image is reduced to
+ * 9x8 grey cells, and every bit tells if a cell is brighter than its right
+ * neighbour. A resized, recompressed or slightly edited copy of an image has
+ * a hash only a few bits away.
+ *
+ * @author louis
+ */
+public final class DifferenceHash {
+
+    /**
+     * Width of the reduced image.
+     */
+    private static final int WIDTH = 9;
+
+    /**
+     * Height of the reduced image.
+     */
+    private static final int HEIGHT = 8;
+
+    /**
+     * Utility class.
+     */
+    private DifferenceHash() {
+    }
+
+    /**
+     * Hash an image file.
+     *
+     * @param f the image file.
+     * @return the hash.
+     *
+     * @throws IOException
+     */
+    public static long of(File f) throws IOException {
+        BufferedImage image = ImageIO.read(f);
+        if (image == null) {
+            throw new IOException(f + " is not an image ImageIO can read.");
+        }
+        return of(image);
+    }
+
+    /**
+     * Hash an image. Every cell is the average of all its pixels.
+     *
+     * @param image the image.
+     * @return the hash.
+     */
+    public static long of(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        double[] sums = new double[WIDTH * HEIGHT];
+        int[] counts = new int[WIDTH * HEIGHT];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            int cellRow = (int) ((long) y * HEIGHT / h) * WIDTH;
+            for (int x = 0; x < w; x++) {
+                int rgb = row[x];
+                int cell = cellRow + (int) ((long) x * WIDTH / w);
+                sums[cell] += 0.299 * ((rgb >> 16) & 0xff)
+                        + 0.587 * ((rgb >> 8) & 0xff)
+                        + 0.114 * (rgb & 0xff);
+                counts[cell]++;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                int cell = y * WIDTH + x;
+                hash <<= 1;
+                if (mean(sums, counts, cell) > mean(sums, counts, cell + 1)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Get the Hamming distance between two hashes.
+     *
+     * @param a a hash.
+     * @param b another hash.
+     * @return how many bits differ.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Get the mean of a cell.
+     *
+     * @param sums the sums of the cells.
+     * @param counts the pixel counts of the cells.
+     * @param cell the cell.
+     * @return the mean, 0 for an empty cell.
+     */
+    private static double mean(double[] sums, int[] counts, int cell) {
+        return counts[cell] == 0 ? 0 : sums[cell] / counts[cell];
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import xyz.vallat.louis.ConfigFileReader;
+import xyz.vallat.louis.Workers;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Fit the images to the limits of every social media before they are
+ * uploaded. An image too large is downscaled and recompressed to JPEG with
+ * ImageIO, on a bounded pool so only a few images are decoded at the same
+ * time. The processed images are cached by content hash and profile, and an
+ * image that already fits, a GIF or anything ImageIO can't read is uploaded
+ * as it is. A processed image stays pinned in the cache until it is released.
+ *
+ * @author louis
+ */
+public final class ImageProcessor {
+
+    /**
+     * Lowest JPEG quality tried before the image is downscaled further.
+     */
+    private static final int MIN_QUALITY = 50;
+
+    /**
+     * How many times a too heavy image is downscaled further before giving
+     * up.
+     */
+    private static final int MAX_ROUNDS = 8;
+
+    static {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        ImageIO.setUseCache(false);
+    }
+
+    /**
+     * Cache of the processed images.
+     */
+    private final MediaCache cache;
+
+    /**
+     * The config, to read the profiles from.
+     */
+    private final ConfigFileReader reader;
+
+    /**
+     * The profiles, by social media name.
+     */
+    private final Map<String, MediaProfile> profiles
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The pool processing the images.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Main constructor.
+     *
+     * @param cache cache of the processed images.
+     * @param reader the config, to read the profiles from.
+     * @param threads how many images can be processed at the same time.
+     */
+    public ImageProcessor(MediaCache cache, ConfigFileReader reader,
+            int threads) {
+        this.cache = cache;
+        this.reader = reader;
+        // Fitting the images is CPU work, so it stays on platform threads.
+        this.executor = Workers.newPlatformPool("image", threads);
+    }
+
+    /**
+     * Get the profile of a social media, reading it from the config the first
+     * time.
+     *
+     * @param platform the social media name.
+     * @return the profile.
+     */
+    public MediaProfile getProfile(String platform) {
+        return this.profiles.computeIfAbsent(platform,
+                p -> MediaProfile.fromConfig(this.reader, p));
+    }
+
+    /**
+     * Fit an image to a social media in the background. The original image
+     * is kept if it can't be processed.
+     *
+     * @param imagePath path to the image.
+     * @param platform the social media name.
+     * @return path to the image to upload.
+     */
+    public CompletableFuture<String> processAsync(String imagePath,
+            String platform) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return process(imagePath, getProfile(platform));
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("[!] Image " + imagePath
+                        + " couldn't be processed for " + platform + ": "
+                        + ex + ".");
+                MetricsRegistry.getSingleton().counter(
+                        "media_processed_total", "platform", platform,
+                        "result", "error").increment();
+                return imagePath;
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Release an image returned by the processor, once it is uploaded.
+     *
+     * @param path path to the image.
+     */
+    public void release(String path) {
+        this.cache.release(path);
+    }
+
+    /**
+     * Fit an image to a profile. The processed image is pinned in the cache
+     * until it is released.
+     *
+     * @param imagePath path to the image.
+     * @param profile the profile.
+     * @return path to the image to upload.
+     *
+     * @throws IOException
+     */
+    public String process(String imagePath, MediaProfile profile)
+            throws IOException {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        long start = System.nanoTime();
+        File source = new File(imagePath);
+        BufferedImage image;
+        String key;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = in == null
+                    ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return unchanged(imagePath, profile);
+            }
+            ImageReader imageReader = readers.next();
+            try {
+                imageReader.setInput(in, true, true);
+                if ("gif".equalsIgnoreCase(imageReader.getFormatName())
+                        || profile.fits(imageReader.getWidth(0),
+                                imageReader.getHeight(0), source.length())) {
+                    return unchanged(imagePath, profile);
+                }
+                key = contentHash(source) + "-" + profile.getKey();
+                MediaFile cached = this.cache.get(key);
+                if (cached != null && this.cache.pin(cached.getPath())) {
+                    saved(source, cached.getFile(), profile, "cached");
+                    return cached.getPath();
+                }
+                image = imageReader.read(0);
+            } finally {
+                imageReader.dispose();
+            }
+        }
+        byte[] jpeg = fit(image, profile);
+        File temp = this.cache.createTempFile();
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(jpeg);
+        }
+        MediaFile processed = this.cache.put(key, temp, key, ".jpg");
+        metrics.timer("media_process_seconds", "platform", profile.getName())
+                .recordSince(start);
+        long saved = saved(source, processed.getFile(), profile, "processed");
+        System.out.println("[*] Image " + source.getName() + " fitted to "
+                + profile.getName() + ", " + saved + " bytes saved.");
+        return processed.getPath();
+    }
+
+    /**
+     * Downscale an image to the profile dimensions, then recompress it with a
+     * lower quality, and downscale it further, until it is light enough.
+     *
+     * @param image the image.
+     * @param profile the profile.
+     * @return the JPEG image.
+     *
+     * @throws IOException
+     */
+    private static byte[] fit(BufferedImage image, MediaProfile profile)
+            throws IOException {
+        double scale = Math.min(1, Math.min(
+                (double) profile.getMaxWidth() / image.getWidth(),
+                (double) profile.getMaxHeight() / image.getHeight()));
+        byte[] jpeg = null;
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            BufferedImage scaled = scale(image,
+                    Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                    Math.max(1, (int) Math.round(image.getHeight() * scale)));
+            for (int quality = profile.getQuality(); quality >= MIN_QUALITY
+                    || quality == profile.getQuality(); quality -= 10) {
+                jpeg = encode(scaled, quality);
+                if (jpeg.length <= profile.getMaxBytes()) {
+                    return jpeg;
+                }
+            }
+            scale *= 0.75;
+        }
+        throw new IOException("the image is still " + jpeg.length
+                + " bytes after being downscaled " + MAX_ROUNDS + " times");
+    }
+
+    /**
+     * Downscale an image, halving it step by step so every pixel counts, on
+     * a white background for the transparent images.
+     *
+     * @param image the image.
+     * @param width the target width.
+     * @param height the target height.
+     * @return the downscaled RGB image.
+     */
+    private static BufferedImage scale(BufferedImage image, int width,
+            int height) {
+        BufferedImage current = image;
+        do {
+            int w = Math.max(width, current.getWidth() / 2);
+            int h = Math.max(height, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(w, h,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(current, 0, 0, w, h, Color.WHITE, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != width || current.getHeight() != height);
+        return current;
+    }
+
+    /**
+     * Encode an image to JPEG.
+     *
+     * @param image the RGB image.
+     * @param quality the JPEG quality, from 1 to 100.
+     * @return the JPEG image.
+     *
+     * @throws IOException
+     */
+    private static byte[] encode(BufferedImage image, int quality)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Count an image uploaded as it is.
+     *
+     * @param imagePath path to the image.
+     * @param profile the profile.
+     * @return path to the image.
+     */
+    private static String unchanged(String imagePath, MediaProfile profile) {
+        MetricsRegistry.getSingleton().counter("media_processed_total",
+                "platform", profile.getName(), "result", "unchanged")
+                .increment();
+        return imagePath;
+    }
+
+    /**
+     * Count a processed image and the bytes it saves.
+     *
+     * @param source the original image.
+     * @param processed the processed image.
+     * @param profile the profile.
+     * @param result if the image was processed or cached.
+     * @return the bytes saved.
+     */
+    private static long saved(File source, File processed,
+            MediaProfile profile, String result) {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        long saved = Math.max(0, source.length() - processed.length());
+        metrics.counter("media_processed_total", "platform", profile.getName(),
+                "result", result).increment();
+        metrics.counter("media_bytes_saved_total", "platform",
+                profile.getName()).add(saved);
+        return saved;
+    }
+
+    /**
+     * Get the content hash of an image, from its name if it comes from the
+     * media cache.
+     *
+     * @param f the image.
+     * @return SHA-256 of the content, in hexadecimal.
+     *
+     * @throws IOException
+     */
+    private static String contentHash(File f) throws IOException {
+        String name = f.getName();
+        int dot = name.indexOf('.');
+        String hash = dot < 0 ? name : name.substring(0, dot);
+        return hash.matches("[0-9a-f]{64}") ? hash : MediaDownloader.hash(f);
+    }
+
+    /**
+     * Stop the pool.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
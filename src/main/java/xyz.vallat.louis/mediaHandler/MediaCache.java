@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk cache of the downloaded medias. Files are named after the hash of their
+ * content, so the same media downloaded twice is only stored once, and the
+ * least recently used files are evicted when the cache grows over its size.
+ * A file still in use is pinned, and never evicted until it is released.
+ *
+ * @author louis
+ */
+public final class MediaCache {
+
+    /**
+     * The cache folder.
+     */
+    private final File directory;
+
+    /**
+     * Maximum size of the cache, in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * The cached files by content hash, in access order.
+     */
+    private final LinkedHashMap<String, File> files
+            = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Content hash of the last downloaded URLs.
+     */
+    private final LinkedHashMap<String, String> urls
+            = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > 10000;
+        }
+    };
+
+    /**
+     * How many users every pinned file has, by content hash.
+     */
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    /**
+     * Current size of the cache, in bytes.
+     */
+    private long size;
+
+    /**
+     * Open a cache folder, keeping the files already in it.
+     *
+     * @param directory the cache folder.
+     * @param maxSize maximum size of the cache, in bytes.
+     *
+     * @throws IOException
+     */
+    public MediaCache(File directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create the media cache folder "
+                    + directory + ".");
+        }
+        File[] existing = directory.listFiles(File::isFile);
+        if (existing != null) {
+            Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+            for (File f : existing) {
+                if (f.getName().endsWith(".tmp")) {
+                    f.delete();
+                } else {
+                    this.files.put(hashOf(f), f);
+                    this.size += f.length();
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Get the cached file of an already downloaded URL.
+     *
+     * @param url the media URL.
+     * @return the media, or null if it isn't in the cache.
+     */
+    public synchronized MediaFile getByUrl(String url) {
+        String hash = this.urls.get(url);
+        if (hash == null) {
+            return null;
+        }
+        File f = this.files.get(hash);
+        return f != null && f.isFile() ? new MediaFile(hash, f) : null;
+    }
+
+    /**
+     * Get a cached file by content hash.
+     *
+     * @param hash the content hash.
+     * @return the media, or null if it isn't in the cache.
+     */
+    public synchronized MediaFile get(String hash) {
+        File f = this.files.get(hash);
+        return f != null && f.isFile() ? new MediaFile(hash, f) : null;
+    }
+
+    /**
+     * Create a temporary file in the cache folder, to download a media into.
+     *
+     * @return the temporary file.
+     *
+     * @throws IOException
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile("download", ".tmp", this.directory);
+    }
+
+    /**
+     * Pin a cached file, so it isn't evicted until it is released.
+     *
+     * @param path path to the file.
+     * @return if the file is in the cache.
+     */
+    public synchronized boolean pin(String path) {
+        File f = new File(path);
+        String hash = hashOf(f);
+        File cached = this.files.get(hash);
+        if (cached == null || !cached.equals(f) || !cached.isFile()) {
+            return false;
+        }
+        this.pins.merge(hash, 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Release a pinned file, which can be evicted again once nobody uses it.
+     * Nothing happens if the file isn't pinned.
+     *
+     * @param path path to the file.
+     */
+    public synchronized void release(String path) {
+        String hash = hashOf(new File(path));
+        if (this.pins.computeIfPresent(hash,
+                (h, users) -> users > 1 ? users - 1 : null) == null) {
+            evict();
+        }
+    }
+
+    /**
+     * Move a downloaded file into the cache. The cached file is pinned.
+     *
+     * @param url the media URL.
+     * @param temp the downloaded file.
+     * @param hash SHA-256 of the file content, in hexadecimal.
+     * @param extension the file extension, with its dot.
+     * @return the cached media.
+     *
+     * @throws IOException
+     */
+    public synchronized MediaFile put(String url, File temp, String hash,
+            String extension) throws IOException {
+        File f = this.files.get(hash);
+        if (f != null && f.isFile()) {
+            Files.delete(temp.toPath());
+        } else {
+            f = new File(this.directory, hash + extension);
+            Files.move(temp.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            this.files.put(hash, f);
+            this.size += f.length();
+        }
+        this.urls.put(url, hash);
+        this.pins.merge(hash, 1, Integer::sum);
+        evict();
+        return new MediaFile(hash, f);
+    }
+
+    /**
+     * Delete the least recently used files until the cache fits its size. The
+     * most recent file and the pinned ones are always kept.
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, File>> it = this.files.entrySet().iterator();
+        while (this.size > this.maxSize && it.hasNext()) {
+            Map.Entry<String, File> eldest = it.next();
+            if (!it.hasNext() || this.pins.containsKey(eldest.getKey())) {
+                continue;
+            }
+            File f = eldest.getValue();
+            this.size -= f.length();
+            it.remove();
+            if (!f.delete() && f.exists()) {
+                System.err.println("[!] Can't delete cached file " + f + ".");
+            }
+        }
+    }
+
+    /**
+     * Get the current size of the cache.
+     *
+     * @return the size, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the hash of a cached file from its name.
+     *
+     * @param f the cached file.
+     * @return the hash.
+     */
+    private static String hashOf(File f) {
+        String name = f.getName();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import xyz.vallat.louis.httpHandler.HttpClient;
+import xyz.vallat.louis.httpHandler.HttpResponse;
+import xyz.vallat.louis.metricsHandler.CountingInputStream;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+/**
+ * Media downloader. Medias are downloaded with the shared HTTP client,
+ * straight from the socket to the disk with NIO channels, and stored in the
+ * media cache, where they stay pinned until they are released.
+ *
+ * @author louis
+ */
+public final class MediaDownloader {
+
+    /**
+     * Size of the buffer used to hash the downloaded files.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The media cache.
+     */
+    private final MediaCache cache;
+
+    /**
+     * The HTTP client.
+     */
+    private final HttpClient client;
+
+    /**
+     * Main constructor.
+     *
+     * @param cache the media cache.
+     * @param client the HTTP client.
+     */
+    public MediaDownloader(MediaCache cache, HttpClient client) {
+        this.cache = cache;
+        this.client = client;
+    }
+
+    /**
+     * Download a media, unless it is already in the cache. The media is
+     * pinned in the cache until it is released.
+     *
+     * @param imageUrl the media URL.
+     * @return the media.
+     *
+     * @throws IOException
+     */
+    public MediaFile download(String imageUrl) throws IOException {
+        MediaFile cached = this.cache.getByUrl(imageUrl);
+        if (cached != null && this.cache.pin(cached.getPath())) {
+            System.out.println("[*] Image " + imageUrl + " is already cached.");
+            return cached;
+        }
+        return this.client.get(imageUrl, Collections.emptyMap(),
+                response -> save(imageUrl, response));
+    }
+
+    /**
+     * Save a downloaded media in the cache.
+     *
+     * @param imageUrl the media URL.
+     * @param response the response to the media request.
+     * @return the media.
+     *
+     * @throws IOException
+     */
+    private MediaFile save(String imageUrl, HttpResponse response)
+            throws IOException {
+        System.out.println("[+] Dowloading image " + imageUrl + ".");
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        long start = System.nanoTime();
+        URL url = new URL(imageUrl);
+        File temp = this.cache.createTempFile();
+        try {
+            response.checkStatus();
+            try (InputStream is = new CountingInputStream(response.getBody(),
+                    metrics.counter("bytes_downloaded_total",
+                            "source", "media"));
+                    ReadableByteChannel in = Channels.newChannel(is);
+                    FileChannel out = new FileOutputStream(temp).getChannel()) {
+                long position = 0;
+                long transferred;
+                while ((transferred = out.transferFrom(
+                        in, position, BUFFER_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            MediaFile media = this.cache.put(imageUrl, temp, hash(temp),
+                    extensionOf(url));
+            metrics.timer("media_download_seconds").recordSince(start);
+            System.out.println("[+] Image " + media.getPath()
+                    + " dowloaded successfully.");
+            return media;
+        } catch (IOException ex) {
+            metrics.counter("media_download_errors_total").increment();
+            throw ex;
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Pin an already downloaded media in the cache, so it isn't evicted
+     * while it is used.
+     *
+     * @param path path to the media.
+     * @return if the media is still in the cache.
+     */
+    public boolean pin(String path) {
+        return this.cache.pin(path);
+    }
+
+    /**
+     * Release a media pinned in the cache.
+     *
+     * @param path path to the media.
+     */
+    public void release(String path) {
+        this.cache.release(path);
+    }
+
+    /**
+     * Hash a file content with SHA-256.
+     *
+     * @param f the file.
+     * @return the hash, in hexadecimal.
+     *
+     * @throws IOException
+     */
+    static String hash(File f) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Get the file extension of a media URL.
+     *
+     * @param url the media URL.
+     * @return the extension, with its dot, or an empty string.
+     */
+    private static String extensionOf(URL url) {
+        String path = url.getPath();
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        return dot > slash ? path.substring(dot).toLowerCase() : "";
+    }
+}
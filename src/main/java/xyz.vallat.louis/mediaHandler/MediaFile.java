@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import java.io.File;
+
+/**
+ * A media file stored in the media cache.
+ *
+ * @author louis
+ */
+public final class MediaFile {
+
+    /**
+     * SHA-256 of the file content, in hexadecimal.
+     */
+    private final String hash;
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * Main constructor.
+     *
+     * @param hash SHA-256 of the file content, in hexadecimal.
+     * @param file the file.
+     */
+    public MediaFile(String hash, File file) {
+        this.hash = hash;
+        this.file = file;
+    }
+
+    /**
+     * Get the content hash.
+     *
+     * @return SHA-256 of the file content, in hexadecimal.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the file.
+     *
+     * @return the file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the file path.
+     *
+     * @return the file path.
+     */
+    public String getPath() {
+        return file.getPath();
+    }
+
+    /**
+     * Get the file size.
+     *
+     * @return the size, in bytes.
+     */
+    public long getSize() {
+        return file.length();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.mediaHandler;
+
+import xyz.vallat.louis.ConfigFileReader;
+
+/**
+ * The image limits of a social media. A bigger image is downscaled and
+ * recompressed before being uploaded.
+ *
+ * @author louis
+ */
+public final class MediaProfile {
+
+    /**
+     * The social media name.
+     */
+    private final String name;
+
+    /**
+     * Largest image width, in pixels.
+     */
+    private final int maxWidth;
+
+    /**
+     * Largest image height, in pixels.
+     */
+    private final int maxHeight;
+
+    /**
+     * Largest image file, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * JPEG quality of the recompressed images, from 1 to 100.
+     */
+    private final int quality;
+
+    /**
+     * Main constructor.
+     *
+     * @param name the social media name.
+     * @param maxWidth largest image width, in pixels.
+     * @param maxHeight largest image height, in pixels.
+     * @param maxBytes largest image file, in bytes.
+     * @param quality JPEG quality of the recompressed images, from 1 to 100.
+     */
+    public MediaProfile(String name, int maxWidth, int maxHeight,
+            long maxBytes, int quality) {
+        this.name = name;
+        this.maxWidth = Math.max(1, maxWidth);
+        this.maxHeight = Math.max(1, maxHeight);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.quality = Math.max(1, Math.min(100, quality));
+    }
+
+    /**
+     * Build the profile of a social media from the config, with the
+     * media.platform.max_width, .max_height, .max_bytes and .jpeg_quality
+     * keys. The defaults are the limits of Twitter.
+     *
+     * @param reader the config.
+     * @param platform the social media name.
+     * @return the profile.
+     */
+    public static MediaProfile fromConfig(ConfigFileReader reader,
+            String platform) {
+        String prefix = "media." + platform + ".";
+        return new MediaProfile(platform,
+                reader.getInt(prefix + "max_width", 4096),
+                reader.getInt(prefix + "max_height", 4096),
+                reader.getLong(prefix + "max_bytes", 5242880),
+                reader.getInt(prefix + "jpeg_quality", 85));
+    }
+
+    /**
+     * Check if an image fits the profile as it is.
+     *
+     * @param width the image width.
+     * @param height the image height.
+     * @param bytes the image file size.
+     * @return if it fits.
+     */
+    public boolean fits(int width, int height, long bytes) {
+        return width <= this.maxWidth && height <= this.maxHeight
+                && bytes <= this.maxBytes;
+    }
+
+    /**
+     * Get a key identifying the limits, to name the processed images.
+     *
+     * @return the key.
+     */
+    public String getKey() {
+        return this.maxWidth + "x" + this.maxHeight + "-" + this.maxBytes
+                + "-q" + this.quality;
+    }
+
+    /**
+     * Get the social media name.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the largest image width.
+     *
+     * @return the width, in pixels.
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Get the largest image height.
+     *
+     * @return the height, in pixels.
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Get the largest image file.
+     *
+     * @return the size, in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the JPEG quality of the recompressed images.
+     *
+     * @return the quality, from 1 to 100.
+     */
+    public int getQuality() {
+        return quality;
+    }
+}
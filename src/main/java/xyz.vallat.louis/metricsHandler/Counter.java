@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.metricsHandler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that can only go up.
+ *
+ * @author louis
+ */
+public final class Counter {
+
+    /**
+     * The count.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Package-private constructor, counters are built by the registry.
+     */
+    Counter() {
+    }
+
+    /**
+     * Add one to the counter.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Add a value to the counter.
+     *
+     * @param value the value to add.
+     */
+    public void add(long value) {
+        count.add(value);
+    }
+
+    /**
+     * Get the count.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.metricsHandler;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of some values. The count, sum and maximum are kept for all
+ * the values, and the percentiles are computed over the last values only.
+ * Timers are histograms of nanoseconds.
+ *
+ * @author louis
+ */
+public final class Histogram {
+
+    /**
+     * How many of the last values are kept for the percentiles.
+     */
+    private static final int RESERVOIR_SIZE = 1024;
+
+    /**
+     * Factor to apply to the values when they are exported.
+     */
+    private final double scale;
+
+    /**
+     * The last values, as a ring buffer.
+     */
+    private final long[] reservoir = new long[RESERVOIR_SIZE];
+
+    /**
+     * Number of values recorded.
+     */
+    private long count;
+
+    /**
+     * Sum of the values recorded.
+     */
+    private long sum;
+
+    /**
+     * Maximum value recorded.
+     */
+    private long max;
+
+    /**
+     * Package-private constructor, histograms are built by the registry.
+     *
+     * @param scale factor to apply to the values when they are exported.
+     */
+    Histogram(double scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value.
+     */
+    public synchronized void record(long value) {
+        reservoir[(int) (count % RESERVOIR_SIZE)] = value;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Record the time elapsed since a given start.
+     *
+     * @param startNanos the start, from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return the count.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the sum of the values recorded, scaled.
+     *
+     * @return the sum.
+     */
+    public synchronized double getSum() {
+        return sum * scale;
+    }
+
+    /**
+     * Get the maximum value recorded, scaled.
+     *
+     * @return the maximum.
+     */
+    public synchronized double getMax() {
+        return max * scale;
+    }
+
+    /**
+     * Get some percentiles of the last values, scaled.
+     *
+     * @param quantiles the quantiles, between 0 and 1.
+     * @return the percentiles, in the same order.
+     */
+    public double[] getPercentiles(double... quantiles) {
+        long[] values;
+        synchronized (this) {
+            values = Arrays.copyOf(reservoir,
+                    (int) Math.min(count, RESERVOIR_SIZE));
+        }
+        Arrays.sort(values);
+        double[] percentiles = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length && values.length > 0; i++) {
+            int rank = (int) Math.ceil(quantiles[i] * values.length) - 1;
+            percentiles[i] = values[Math.max(0,
+                    Math.min(values.length - 1, rank))] * scale;
+        }
+        return percentiles;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.metricsHandler;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Export the metrics of a registry as a JSON snapshot and in the Prometheus
+ * text format.
+ *
+ * @author louis
+ */
+public final class MetricsExporter {
+
+    /**
+     * The exported quantiles.
+     */
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    /**
+     * Names of the exported quantiles in the JSON snapshot.
+     */
+    private static final String[] QUANTILE_NAMES = {"p50", "p95", "p99"};
+
+    /**
+     * The registry to export.
+     */
+    private final MetricsRegistry registry;
+
+    /**
+     * Main constructor.
+     *
+     * @param registry the registry to export.
+     */
+    public MetricsExporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Build a JSON snapshot of the metrics.
+     *
+     * @return the snapshot.
+     */
+    public String toJson() {
+        JsonObject snapshot = new JsonObject();
+        snapshot.addProperty("timestamp", System.currentTimeMillis());
+        JsonObject counters = new JsonObject();
+        for (Map.Entry<String, Counter> e
+                : registry.getCounters().entrySet()) {
+            counters.addProperty(e.getKey(), e.getValue().getCount());
+        }
+        snapshot.add("counters", counters);
+        JsonObject gauges = new JsonObject();
+        for (Map.Entry<String, Supplier<? extends Number>> e
+                : registry.getGauges().entrySet()) {
+            gauges.addProperty(e.getKey(), e.getValue().get());
+        }
+        snapshot.add("gauges", gauges);
+        JsonObject histograms = new JsonObject();
+        for (Map.Entry<String, Histogram> e
+                : registry.getHistograms().entrySet()) {
+            Histogram h = e.getValue();
+            JsonObject values = new JsonObject();
+            values.addProperty("count", h.getCount());
+            values.addProperty("sum", h.getSum());
+            values.addProperty("max", h.getMax());
+            double[] percentiles = h.getPercentiles(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                values.addProperty(QUANTILE_NAMES[i], percentiles[i]);
+            }
+            histograms.add(e.getKey(), values);
+        }
+        snapshot.add("histograms", histograms);
+        return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping()
+                .create().toJson(snapshot);
+    }
+
+    /**
+     * Dump the metrics in the Prometheus text format. Histograms and timers
+     * are exported as summaries.
+     *
+     * @return the dump.
+     */
+    public String toPrometheus() {
+        Map<String, StringBuilder> families = new TreeMap<>();
+        for (Map.Entry<String, Counter> e
+                : registry.getCounters().entrySet()) {
+            family(families, e.getKey(), "counter").append(e.getKey())
+                    .append(' ').append(e.getValue().getCount()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> e
+                : registry.getGauges().entrySet()) {
+            family(families, e.getKey(), "gauge").append(e.getKey())
+                    .append(' ').append(e.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> e
+                : registry.getHistograms().entrySet()) {
+            Map.Entry<String, String> id = MetricsRegistry.split(e.getKey());
+            String name = id.getKey();
+            String labels = id.getValue();
+            Histogram h = e.getValue();
+            StringBuilder out = family(families, e.getKey(), "summary");
+            double[] percentiles = h.getPercentiles(QUANTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                out.append(name).append('{').append(labels)
+                        .append(labels.isEmpty() ? "" : ",")
+                        .append("quantile=\"").append(QUANTILES[i])
+                        .append("\"} ").append(percentiles[i]).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(suffix).append(' ')
+                    .append(h.getSum()).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ')
+                    .append(h.getCount()).append('\n');
+        }
+        StringBuilder dump = new StringBuilder();
+        for (StringBuilder family : families.values()) {
+            dump.append(family);
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Write the JSON snapshot and the Prometheus dump in a folder, as
+     * metrics.json and metrics.prom. Files are replaced atomically.
+     *
+     * @param directory the folder.
+     *
+     * @throws IOException
+     */
+    public void writeTo(File directory) throws IOException {
+        write(new File(directory, "metrics.json"), toJson());
+        write(new File(directory, "metrics.prom"), toPrometheus());
+    }
+
+    /**
+     * Replace a file content atomically.
+     *
+     * @param f the file.
+     * @param content the new content.
+     *
+     * @throws IOException
+     */
+    private static void write(File f, String content) throws IOException {
+        File temp = new File(f.getPath() + ".tmp");
+        Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), f.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the lines of the family of a metric, starting them with the TYPE
+     * line if needed. All the metrics with the same name are kept together.
+     *
+     * @param families the families, by name.
+     * @param id the metric id.
+     * @param type the metric type.
+     * @return the lines of the family.
+     */
+    private static StringBuilder family(Map<String, StringBuilder> families,
+            String id, String type) {
+        String name = MetricsRegistry.split(id).getKey();
+        return families.computeIfAbsent(name, n -> new StringBuilder()
+                .append("# TYPE ").append(n).append(' ').append(type)
+                .append('\n'));
+    }
+}
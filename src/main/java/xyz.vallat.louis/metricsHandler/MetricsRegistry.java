@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.metricsHandler;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Singleton registry of all the metrics of the bot. A metric is identified by
+ * its name and its labels, given as name/value pairs, like
+ * {@code timer("platform_post_seconds", "platform", "Twitter")}.
+ *
+ * @author louis
+ */
+public final class MetricsRegistry {
+
+    /**
+     * The singleton.
+     */
+    private static final MetricsRegistry SINGLETON = new MetricsRegistry();
+
+    /**
+     * The counters, by id.
+     */
+    private final ConcurrentSkipListMap<String, Counter> counters
+            = new ConcurrentSkipListMap<>();
+
+    /**
+     * The histograms and timers, by id.
+     */
+    private final ConcurrentSkipListMap<String, Histogram> histograms
+            = new ConcurrentSkipListMap<>();
+
+    /**
+     * The gauges, by id.
+     */
+    private final ConcurrentSkipListMap<String, Supplier<? extends Number>> gauges
+            = new ConcurrentSkipListMap<>();
+
+    /**
+     * Private constructor, use the singleton.
+     */
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Get the Singleton registry.
+     *
+     * @return the instance.
+     */
+    public static MetricsRegistry getSingleton() {
+        return SINGLETON;
+    }
+
+    /**
+     * Get a counter, creating it if needed.
+     *
+     * @param name the metric name.
+     * @param labels the labels, as name/value pairs.
+     * @return the counter.
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(id(name, labels), k -> new Counter());
+    }
+
+    /**
+     * Get a timer, creating it if needed. Timers record nanoseconds and are
+     * exported in seconds.
+     *
+     * @param name the metric name.
+     * @param labels the labels, as name/value pairs.
+     * @return the timer.
+     */
+    public Histogram timer(String name, String... labels) {
+        return histograms.computeIfAbsent(id(name, labels),
+                k -> new Histogram(1e-9));
+    }
+
+    /**
+     * Get a histogram, creating it if needed.
+     *
+     * @param name the metric name.
+     * @param labels the labels, as name/value pairs.
+     * @return the histogram.
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(id(name, labels),
+                k -> new Histogram(1));
+    }
+
+    /**
+     * Register a gauge, replacing any gauge with the same id.
+     *
+     * @param name the metric name.
+     * @param value gives the current value of the gauge.
+     * @param labels the labels, as name/value pairs.
+     */
+    public void gauge(String name, Supplier<? extends Number> value,
+            String... labels) {
+        gauges.put(id(name, labels), value);
+    }
+
+    /**
+     * Get all the counters.
+     *
+     * @return the counters, by id.
+     */
+    public SortedMap<String, Counter> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Get all the histograms and timers.
+     *
+     * @return the histograms, by id.
+     */
+    public SortedMap<String, Histogram> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * Get all the gauges.
+     *
+     * @return the gauges, by id.
+     */
+    public SortedMap<String, Supplier<? extends Number>> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * Build the id of a metric, in the Prometheus format:
+     * {@code name{label="value",...}}.
+     *
+     * @param name the metric name.
+     * @param labels the labels, as name/value pairs.
+     * @return the id.
+     */
+    static String id(String name, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Labels should be name/value pairs, and there were "
+                    + labels.length + " of them.");
+        }
+        if (labels.length == 0) {
+            return name;
+        }
+        StringBuilder id = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                id.append(',');
+            }
+            id.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\")
+                            .replace("\"", "\\\""))
+                    .append('"');
+        }
+        return id.append('}').toString();
+    }
+
+    /**
+     * Split an id into its name and its labels.
+     *
+     * @param id the id.
+     * @return the name and the labels, without the braces.
+     */
+    static Map.Entry<String, String> split(String id) {
+        int brace = id.indexOf('{');
+        return brace < 0
+                ? new AbstractMap.SimpleImmutableEntry<>(id, "")
+                : new AbstractMap.SimpleImmutableEntry<>(
+                        id.substring(0, brace),
+                        id.substring(brace + 1, id.length() - 1));
+    }
+}
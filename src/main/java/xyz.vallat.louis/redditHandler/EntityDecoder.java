@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.redditHandler;
+
+/**
+ * Decoder of the HTML entities Reddit leaves in the titles, the authors and
+ * the urls of the posts. The value is read once: a value without any entity
+ * is returned as it is, and the others are decoded into a reused buffer, so
+ * there is only one new string per decoded value. An entity decoded once is
+ * never decoded again, so "&amp;lt;" gives "&lt;". A decoder is not thread
+ * safe.
+ *
+ * @author louis
+ */
+public final class EntityDecoder {
+
+    /**
+     * Longest entity we decode, from the ampersand to the semicolon, like
+     * "&#x10ffff;".
+     */
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    /**
+     * The reused buffer.
+     */
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    /**
+     * Decode the entities of a value.
+     *
+     * @param value the value, may be null.
+     * @return the decoded value, or the value itself if it has no entity.
+     */
+    public String decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+        StringBuilder out = this.buffer;
+        out.setLength(0);
+        out.append(value, 0, amp);
+        int length = value.length();
+        int i = amp;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c != '&') {
+                out.append(c);
+                i++;
+                continue;
+            }
+            int end = value.indexOf(';', i + 1);
+            if (end < 0 || end - i > MAX_ENTITY_LENGTH
+                    || !appendEntity(value, i + 1, end, out)) {
+                out.append(c);
+                i++;
+            } else {
+                i = end + 1;
+            }
+        }
+        String decoded = out.toString();
+        if (out.capacity() > 4096) {
+            this.buffer.setLength(0);
+            this.buffer.trimToSize();
+        }
+        return decoded;
+    }
+
+    /**
+     * Append the character of an entity.
+     *
+     * @param value the value being decoded.
+     * @param start index of the entity name, after the ampersand.
+     * @param end index of the semicolon ending the entity.
+     * @param out where to append the character.
+     * @return false if the entity is unknown, and nothing was appended.
+     */
+    private static boolean appendEntity(String value, int start, int end,
+            StringBuilder out) {
+        int length = end - start;
+        if (length < 2) {
+            return false;
+        }
+        if (value.charAt(start) == '#') {
+            return appendNumericEntity(value, start + 1, end, out);
+        }
+        if (length == 2 && value.charAt(start + 1) == 't') {
+            switch (value.charAt(start)) {
+                case 'l':
+                    out.append('<');
+                    return true;
+                case 'g':
+                    out.append('>');
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        if (length == 3 && value.startsWith("amp", start)) {
+            out.append('&');
+        } else if (length == 4 && value.startsWith("quot", start)) {
+            out.append('"');
+        } else if (length == 4 && value.startsWith("apos", start)) {
+            out.append('\'');
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Append the character of a numeric entity, like "&#39;" or "&#x27;".
+     *
+     * @param value the value being decoded.
+     * @param start index of the number, after the "#".
+     * @param end index of the semicolon ending the entity.
+     * @param out where to append the character.
+     * @return false if the number isn't a valid code point, and nothing was
+     * appended.
+     */
+    private static boolean appendNumericEntity(String value, int start,
+            int end, StringBuilder out) {
+        int radix = 10;
+        if (start < end && (value.charAt(start) == 'x'
+                || value.charAt(start) == 'X')) {
+            radix = 16;
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        int codePoint = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(value.charAt(i), radix);
+            if (digit < 0) {
+                return false;
+            }
+            codePoint = codePoint * radix + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                return false;
+            }
+        }
+        if (codePoint == 0 || (codePoint >= Character.MIN_SURROGATE
+                && codePoint <= Character.MAX_SURROGATE)) {
+            return false;
+        }
+        out.appendCodePoint(codePoint);
+        return true;
+    }
+}
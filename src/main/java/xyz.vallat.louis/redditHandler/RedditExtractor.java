@@ -16,19 +16,29 @@
  */
 package xyz.vallat.louis.redditHandler;
 
-import com.google.gson.*;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.MalformedJsonException;
+import xyz.vallat.louis.exceptions.CircuitOpen;
 import xyz.vallat.louis.exceptions.NoSuchFile;
 import xyz.vallat.louis.exceptions.NoSuchOrder;
 import xyz.vallat.louis.exceptions.NoSuchProperty;
 import xyz.vallat.louis.exceptions.NotSufficientRights;
+import xyz.vallat.louis.httpHandler.HttpClient;
+import xyz.vallat.louis.httpHandler.HttpStatusException;
+import xyz.vallat.louis.httpHandler.RetryPolicy;
+import xyz.vallat.louis.metricsHandler.CountingInputStream;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  * Reddit extractor object.
@@ -43,25 +53,46 @@ public final class RedditExtractor {
     private final SubReddit sub;
 
     /**
-     * Main Constructor.
+     * Parser for the subreddit listings.
+     */
+    private final RedditListingParser parser;
+
+    /**
+     * HTTP client sending the requests to Reddit.
+     */
+    private final HttpClient client;
+
+    /**
+     * Retry policy of the requests to Reddit.
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * If Reddit has told whether the subreddit exists.
+     */
+    private volatile boolean checked;
+
+    /**
+     * Main Constructor. Whether the subreddit exists is checked with
+     * {@link #checkExists(boolean)}.
      *
      * @param subreddit Subreddit name. Just after /r/
+     * @param client HTTP client sending the requests to Reddit.
+     * @param retryPolicy retry policy of the requests to Reddit.
      *
-     * @throws IOException
      * @throws NoSuchProperty
      * @throws NoSuchFile
      * @throws NotSufficientRights
      * @throws NoSuchOrder
      */
-    public RedditExtractor(String subreddit)
-            throws IOException, NoSuchProperty, NoSuchFile,
-            NotSufficientRights, NoSuchOrder {
-        if (!doesSubredditExists(subreddit)) {
-            throw new MalformedURLException("This subreddit ("
-                    + subreddit + ") does not exist.");
-        } else {
-            this.sub = new SubReddit(subreddit);
-        }
+    public RedditExtractor(String subreddit, HttpClient client,
+            RetryPolicy retryPolicy)
+            throws NoSuchProperty, NoSuchFile, NotSufficientRights,
+            NoSuchOrder {
+        this.client = client;
+        this.retryPolicy = retryPolicy;
+        this.sub = new SubReddit(subreddit);
+        this.parser = new RedditListingParser(subreddit);
     }
 
     /**
@@ -69,161 +100,231 @@ public final class RedditExtractor {
      *
      * @param subredditName
      * @return if a subreddit exists
+     *
+     * @throws IOException
+     * @throws CircuitOpen
      */
-    public boolean doesSubredditExists(String subredditName) {
+    public boolean doesSubredditExists(String subredditName)
+            throws IOException, CircuitOpen {
         System.out.println("[*] Checking if subreddit /r/" + subredditName
                 + " exists.");
-        return ((JsonParser.parseString(getJsonFromURL(""
-                        + "https://www.reddit.com/api/search_reddit_names.json"
-                        + "?query=" + subredditName + "&exact=true")).getAsJsonObject()
-                .get("names").getAsJsonArray()
-                .size()) >= 1);
+        return hasNames(getJsonFromURL(searchURL(subredditName)));
+    }
+
+    /**
+     * Check if the subreddit exists. Only a definitive answer from Reddit
+     * tells it doesn't: an empty search or a 404. A failed request throws,
+     * and the check has to be done again.
+     *
+     * @param retried if the request is retried with the retry policy, or
+     * sent once.
+     * @return if the subreddit exists.
+     *
+     * @throws IOException
+     * @throws CircuitOpen
+     */
+    public boolean checkExists(boolean retried)
+            throws IOException, CircuitOpen {
+        String name = this.sub.getName();
+        System.out.println("[*] Checking if subreddit /r/" + name
+                + " exists.");
+        String URL = searchURL(name);
+        boolean exists;
+        try {
+            exists = hasNames(retried ? getJsonFromURL(URL)
+                    : this.retryPolicy.send(() -> readJson(URL)));
+        } catch (HttpStatusException ex) {
+            if (ex.getStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw ex;
+            }
+            exists = false;
+        }
+        this.checked = true;
+        return exists;
+    }
+
+    /**
+     * Check if Reddit has told whether the subreddit exists.
+     *
+     * @return if the subreddit has been checked.
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    /**
+     * Get the URL searching for a subreddit name.
+     *
+     * @param subredditName the subreddit name.
+     * @return the URL.
+     */
+    private String searchURL(String subredditName) {
+        return this.sub.getBaseURL() + "/api/search_reddit_names.json"
+                + "?query=" + subredditName + "&exact=true";
+    }
+
+    /**
+     * Check if a search for subreddit names found any.
+     *
+     * @param json the search response.
+     * @return if a name was found.
+     */
+    private static boolean hasNames(String json) {
+        return JsonParser.parseString(json).getAsJsonObject()
+                .get("names").getAsJsonArray().size() >= 1;
     }
 
     /**
      * Obtain the subreddit JSON response.
      *
      * @return the JSON from the REDDIT API.
+     *
+     * @throws IOException
+     * @throws CircuitOpen
      */
-    public String getSubredditJson() {
+    public String getSubredditJson() throws IOException, CircuitOpen {
         return getJsonFromURL(this.sub.getJsonURL());
     }
 
     /**
-     * Get JSON from URL.
+     * Get JSON from URL. Failed requests are retried with the retry policy.
      *
      * @param URL the JSON url.
      * @return the JSON data as a String from the given URL.
+     *
+     * @throws IOException
+     * @throws CircuitOpen
      */
-    public String getJsonFromURL(String URL) {
-        try {
-            System.out.println("[+] Obtaining JSON from URL " + URL + ".");
-            HttpURLConnection con;
-            URL myurl = new URL(URL);
-            con = (HttpURLConnection) myurl.openConnection();
-            try {
-                con.setRequestMethod("GET");
-                con.setRequestProperty("User-Agent", "Mozilla 5.0 (Windows; U; "
-                        + "Windows NT 5.1; en-US; rv:1.8.0.11) ");
-                StringBuilder response;
-                try (BufferedReader in = new BufferedReader(
-                        new InputStreamReader(con.getInputStream()))) {
-                    String line;
-                    response = new StringBuilder();
-                    while ((line = in.readLine()) != null) {
-                        response.append(line);
-                        response.append(System.lineSeparator());
-                    }
-                    return response.toString();
+    public String getJsonFromURL(String URL) throws IOException, CircuitOpen {
+        return this.retryPolicy.execute(() -> readJson(URL));
+    }
+
+    /**
+     * Send a single request for JSON.
+     *
+     * @param URL the JSON url.
+     * @return the JSON data as a String from the given URL.
+     *
+     * @throws IOException
+     */
+    private String readJson(String URL) throws IOException {
+        System.out.println("[+] Obtaining JSON from URL " + URL + ".");
+        return this.client.get(URL, Collections.emptyMap(), response -> {
+            response.checkStatus();
+            StringBuilder json;
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(response.getBody(),
+                            StandardCharsets.UTF_8))) {
+                String line;
+                json = new StringBuilder();
+                while ((line = in.readLine()) != null) {
+                    json.append(line);
+                    json.append(System.lineSeparator());
                 }
-            } finally {
-                con.disconnect();
+                return json.toString();
             }
-        } catch (IOException e) {
-            System.err.println("[!] IOException: " + e.getMessage());
-            System.out.println("[!] Retrying...");
-            return getJsonFromURL(URL);
-        }
+        });
     }
 
     /**
-     * Get Reddit's subreddit posts.
+     * Get Reddit's subreddit posts. The listing is parsed while it is read
+     * from the connection. Only the posts newer than the last committed
+     * listing are asked, and a listing that hasn't been modified is not read
+     * again. A single attempt is sent, and its outcome recorded by the retry
+     * policy, which tells when to try again if it failed.
+     *
+     * @return the listing, with all the new reddit posts parsed in the listing
+     * order.
      *
-     * @return a treeset of all the reddit posts parsed.
+     * @throws IOException
+     * @throws CircuitOpen
      */
-    public HashSet<RedditPost> getRedditPosts() {
-        try {
-            HashSet<RedditPost> set = new HashSet<>();
-            String jsonResponse = getSubredditJson();
-            JsonObject objet = JsonParser.parseString(jsonResponse)
-                    .getAsJsonObject();
-            JsonObject data = JsonParser.parseString(objet.get("data")
-                    .toString()).getAsJsonObject();
-            JsonArray children = JsonParser.parseString(data.get("children")
-                    .toString()).getAsJsonArray();
-            for (int i = 0; i < children.size(); i++) {
-                try {
-                    JsonObject child = JsonParser.parseString(children.get(i)
-                            .toString()).getAsJsonObject();
-                    JsonObject childData = JsonParser.parseString(child.get("data")
-                            .toString()).getAsJsonObject();
-                    if (childData.get("id").toString() != null
-                            && !childData.get("quarantine").getAsBoolean()
-                            && childData.get("url").getAsString() != null) {
-                        String id = childData.get("id").toString();
-                        String title = childData.get("title") != null
-                                ? childData.get("title").toString()
-                                : this.sub.getName();
-                        title = title
-                                .replace("\"", "")
-                                .replace("\\", "\"")
-                                .replace("&lt;", "<")
-                                .replace("&gt;", ">")
-                                .replace("&amp;", "&");
-                        String author = childData.get("author") != null
-                                ? childData.get("author").toString()
-                                        .replace("&lt;", "<")
-                                        .replace("&gt;", ">")
-                                        .replace("&amp;", "&") : "anonymous";
-                        author = author.replace("\"", "");
-                        boolean quarantine = childData.get("quarantine")
-                                .getAsBoolean();
-                        double score = childData.get("score").getAsDouble();
-                        String postHint = childData.get("post_hint").getAsString();
-                        boolean crosspostable = !childData.get("is_crosspostable")
-                                .getAsBoolean();
-                        boolean over18 = childData.get("over_18").getAsBoolean();
-                        String url;
-                        try {
-                            JsonObject preview = JsonParser.parseString(childData
-                                    .get("preview").toString()).getAsJsonObject();
-                            JsonArray previewImages = JsonParser.parseString(preview
-                                    .get("images").toString()).getAsJsonArray();
-                            JsonObject source = JsonParser.parseString(previewImages
-                                    .get(0).toString()).getAsJsonObject();
-                            JsonObject urlSrc = JsonParser.parseString(source
-                                    .get("source").toString()).getAsJsonObject();
-                            url = urlSrc.get("url").toString().replace("&amp;", "&")
-                                    .replace("\"", "");
-                        } catch (NullPointerException n) {
-                            url = childData.get("url").getAsString();
-                        }
-                        String permalink = childData.get("permalink").getAsString();
-                        boolean spoiler = childData.get("spoiler").getAsBoolean();
-
-                        if (postHint.contains("video")) {
-                            set.add(new RedditPostVideo(
-                                    id, title, quarantine, score, postHint,
-                                    crosspostable, over18, author,
-                                    permalink, spoiler, url));
-                        } else if ("link".equals(postHint)) {
-                            set.add(new RedditPostLink(
-                                    id, title, quarantine, score, postHint,
-                                    crosspostable, over18, author,
-                                    permalink, spoiler, url));
-                        } else if ("text".equals(postHint)) {
-                            set.add(new RedditPostText(
-                                    id, title, quarantine, score, postHint,
-                                    crosspostable, over18, author,
-                                    permalink, spoiler, url));
-                        } else if ("image".equals(postHint)) {
-                            set.add(new RedditPostImage(
-                                    id, title, quarantine, score, postHint,
-                                    crosspostable, over18, author,
-                                    permalink, spoiler, url));
-                        }
-                    }
-                } catch (NullPointerException e) {
-                    System.out.println(
-                            "[*] There were a problem while parsing. "
-                            + "Continuing");
-                }
+    public RedditListing getRedditPosts() throws IOException, CircuitOpen {
+        String URL = this.sub.getJsonURL();
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        return this.retryPolicy.send(() -> {
+            System.out.println("[+] Obtaining JSON from URL " + URL + ".");
+            Map<String, String> headers = new HashMap<>();
+            String entityTag = this.sub.getEntityTag(URL);
+            if (entityTag != null) {
+                headers.put("If-None-Match", entityTag);
             }
-            return set;
-        } catch (JsonSyntaxException e) {
-            System.err.println("[!] JsonSyntaxException: " + e.getMessage());
-            System.exit(1);
+            String lastModified = this.sub.getLastModified(URL);
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+            long requested = System.nanoTime();
+            return this.client.get(URL, headers, response -> {
+                int responseCode = response.checkStatus();
+                metrics.timer("reddit_listing_fetch_seconds",
+                        "subreddit", this.sub.getName())
+                        .recordSince(requested);
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    System.out.println("[*] /r/" + this.sub.getName()
+                            + " hasn't been modified.");
+                    return emptyListing();
+                }
+                RedditListing listing;
+                long start = System.nanoTime();
+                try (Reader in = new InputStreamReader(
+                        new CountingInputStream(response.getBody(),
+                                metrics.counter("bytes_downloaded_total",
+                                        "source", "reddit")),
+                        StandardCharsets.UTF_8)) {
+                    listing = this.parser.parse(in);
+                } catch (MalformedJsonException | IllegalStateException e) {
+                    System.err.println("[!] JsonSyntaxException: "
+                            + e.getMessage());
+                    return emptyListing();
+                }
+                metrics.timer("reddit_listing_parse_seconds",
+                        "subreddit", this.sub.getName()).recordSince(start);
+                listing.setValidators(URL, response.getHeader("ETag"),
+                        response.getHeader("Last-Modified"));
+                return listing;
+            });
+        });
+    }
+
+    /**
+     * Move the polling cursor and the validators past a listing, once its
+     * posts are safely claimed. Until then, the same posts are asked again.
+     *
+     * @param listing the listing.
+     */
+    public void commit(RedditListing listing) {
+        if (listing.getJsonURL() == null) {
+            return;
         }
-        return null;
+        this.sub.setValidators(listing.getJsonURL(), listing.getEntityTag(),
+                listing.getLastModified());
+        this.sub.updateCursor(listing);
+    }
+
+    /**
+     * Get a listing without any post.
+     *
+     * @return the empty listing.
+     */
+    private static RedditListing emptyListing() {
+        return new RedditListing(new HashSet<>(), null, 0);
+    }
+
+    /**
+     * Get the subreddit.
+     *
+     * @return the subreddit.
+     */
+    public SubReddit getSubReddit() {
+        return sub;
+    }
+
+    /**
+     * Get the retry policy of the requests to Reddit.
+     *
+     * @return the retry policy.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
     }
 }
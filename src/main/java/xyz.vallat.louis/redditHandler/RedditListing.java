@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.redditHandler;
+
+import java.util.HashSet;
+
+/**
+ * A parsed Reddit listing.
+ *
+ * @author louis
+ */
+public final class RedditListing {
+
+    /**
+     * The posts of the listing that can be shared, in the listing order.
+     */
+    private final HashSet<RedditPost> posts;
+
+    /**
+     * Fullname (t3_id) of the first child of the listing, null if it is empty.
+     */
+    private final String firstFullname;
+
+    /**
+     * Number of children in the listing, including the skipped ones.
+     */
+    private final int size;
+
+    /**
+     * URL the listing was read from, null if it was not read.
+     */
+    private String jsonURL;
+
+    /**
+     * ETag header sent with the listing.
+     */
+    private String entityTag;
+
+    /**
+     * Last-Modified header sent with the listing.
+     */
+    private String lastModified;
+
+    /**
+     * Main constructor.
+     *
+     * @param posts the posts of the listing that can be shared.
+     * @param firstFullname fullname of the first child of the listing.
+     * @param size number of children in the listing.
+     */
+    public RedditListing(HashSet<RedditPost> posts, String firstFullname,
+            int size) {
+        this.posts = posts;
+        this.firstFullname = firstFullname;
+        this.size = size;
+    }
+
+    /**
+     * Get the posts of the listing.
+     *
+     * @return the posts, in the listing order.
+     */
+    public HashSet<RedditPost> getPosts() {
+        return posts;
+    }
+
+    /**
+     * Get the fullname of the first child of the listing. For the new order,
+     * this is the newest post.
+     *
+     * @return the fullname, or null if the listing is empty.
+     */
+    public String getFirstFullname() {
+        return firstFullname;
+    }
+
+    /**
+     * Record where the listing was read from, and its validators.
+     *
+     * @param jsonURL the listing URL.
+     * @param entityTag the ETag header, may be null.
+     * @param lastModified the Last-Modified header, may be null.
+     */
+    void setValidators(String jsonURL, String entityTag,
+            String lastModified) {
+        this.jsonURL = jsonURL;
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Get the URL the listing was read from.
+     *
+     * @return the URL, or null if the listing was not read, because it
+     * hadn't been modified or couldn't be parsed.
+     */
+    public String getJsonURL() {
+        return jsonURL;
+    }
+
+    /**
+     * Get the ETag header sent with the listing.
+     *
+     * @return the ETag, or null.
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Get the Last-Modified header sent with the listing.
+     *
+     * @return the Last-Modified date, or null.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the number of children in the listing, including the skipped ones.
+     *
+     * @return the number of children.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.redditHandler;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * Streaming parser for the Reddit listings. The listing is read once, token by
+ * token, and every field we don't use is skipped without being built.
+ *
+ * @author louis
+ */
+public final class RedditListingParser {
+
+    /**
+     * Title to use when a post has none.
+     */
+    private final String defaultTitle;
+
+    /**
+     * Pool of the authors, subreddits and hints, which are repeated by many
+     * posts.
+     */
+    private final StringPool strings = new StringPool(1024);
+
+    /**
+     * Decoder of the HTML entities of the titles, authors and urls.
+     */
+    private final EntityDecoder entities = new EntityDecoder();
+
+    /**
+     * Main constructor.
+     *
+     * @param defaultTitle title to use when a post has none, usually the
+     * subreddit's name.
+     */
+    public RedditListingParser(String defaultTitle) {
+        this.defaultTitle = defaultTitle;
+    }
+
+    /**
+     * Parse a listing.
+     *
+     * @param in the listing JSON.
+     * @return the listing.
+     *
+     * @throws IOException
+     */
+    public RedditListing parse(Reader in) throws IOException {
+        ListingBuilder listing = new ListingBuilder();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("data".equals(reader.nextName())) {
+                readListingData(reader, listing);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new RedditListing(listing.posts, listing.firstFullname,
+                listing.size);
+    }
+
+    /**
+     * Read the data object of a listing.
+     *
+     * @param reader the JSON reader.
+     * @param listing where to add the posts.
+     *
+     * @throws IOException
+     */
+    private void readListingData(JsonReader reader, ListingBuilder listing)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("children".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readChild(reader, listing);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a child of a listing.
+     *
+     * @param reader the JSON reader.
+     * @param listing where to add the post, if it can be shared.
+     *
+     * @throws IOException
+     */
+    private void readChild(JsonReader reader, ListingBuilder listing)
+            throws IOException {
+        listing.size++;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("data".equals(reader.nextName())) {
+                RedditPost post = readPost(reader, listing);
+                if (post != null) {
+                    listing.posts.add(post);
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the data of a post.
+     *
+     * @param reader the JSON reader.
+     * @param listing the listing being read.
+     * @return the reddit post, or null if it can't or shouldn't be shared.
+     *
+     * @throws IOException
+     */
+    private RedditPost readPost(JsonReader reader, ListingBuilder listing)
+            throws IOException {
+        String id = null;
+        String title = null;
+        String author = null;
+        String subreddit = null;
+        Boolean quarantine = null;
+        Double score = null;
+        String postHint = null;
+        Boolean crosspostable = null;
+        Boolean over18 = null;
+        String url = null;
+        String previewUrl = null;
+        String permalink = null;
+        Boolean spoiler = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextString(reader);
+                    break;
+                case "name":
+                    if (listing.firstFullname == null) {
+                        listing.firstFullname = nextString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "title":
+                    title = nextString(reader);
+                    break;
+                case "author":
+                    author = nextString(reader);
+                    break;
+                case "subreddit":
+                    subreddit = nextString(reader);
+                    break;
+                case "quarantine":
+                    quarantine = nextBoolean(reader);
+                    break;
+                case "score":
+                    score = nextDouble(reader);
+                    break;
+                case "post_hint":
+                    postHint = nextString(reader);
+                    break;
+                case "is_crosspostable":
+                    crosspostable = nextBoolean(reader);
+                    break;
+                case "over_18":
+                    over18 = nextBoolean(reader);
+                    break;
+                case "url":
+                    url = nextString(reader);
+                    break;
+                case "preview":
+                    previewUrl = readPreviewUrl(reader);
+                    break;
+                case "permalink":
+                    permalink = nextString(reader);
+                    break;
+                case "spoiler":
+                    spoiler = nextBoolean(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id == null || quarantine == null || url == null || score == null
+                || postHint == null || crosspostable == null || over18 == null
+                || permalink == null || spoiler == null) {
+            System.out.println(
+                    "[*] There were a problem while parsing. "
+                    + "Continuing");
+            return null;
+        }
+        if (quarantine) {
+            return null;
+        }
+        RedditPost.Type type = RedditPost.Type.fromHint(postHint);
+        if (type == null) {
+            return null;
+        }
+        long postId;
+        try {
+            postId = RedditPost.decodeId(id);
+        } catch (NumberFormatException ex) {
+            System.out.println("[*] Invalid post id " + id + ". Continuing");
+            return null;
+        }
+        title = title != null
+                ? this.entities.decode(title)
+                : this.defaultTitle;
+        author = author != null
+                ? this.entities.decode(author)
+                : "anonymous";
+        if (previewUrl != null) {
+            url = this.entities.decode(previewUrl);
+        }
+
+        return new RedditPost(postId, type,
+                this.strings.get(subreddit != null
+                        ? subreddit : this.defaultTitle),
+                title, this.strings.get(author), permalink, url,
+                this.strings.get(postHint), score.intValue(), quarantine,
+                !crosspostable, over18, spoiler);
+    }
+
+    /**
+     * Read the preview object of a post, and keep the url of the source of its
+     * first image.
+     *
+     * @param reader the JSON reader.
+     * @return the preview url, or null if there is none.
+     *
+     * @throws IOException
+     */
+    private static String readPreviewUrl(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("images".equals(reader.nextName())
+                    && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    url = readImageSourceUrl(reader);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return url;
+    }
+
+    /**
+     * Read an image of a preview, and keep the url of its source.
+     *
+     * @param reader the JSON reader.
+     * @return the source url, or null if there is none.
+     *
+     * @throws IOException
+     */
+    private static String readImageSourceUrl(JsonReader reader)
+            throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("source".equals(reader.nextName())
+                    && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("url".equals(reader.nextName())) {
+                        url = nextString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return url;
+    }
+
+    /**
+     * Read a string value, which may be null.
+     *
+     * @param reader the JSON reader.
+     * @return the string, or null.
+     *
+     * @throws IOException
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Read a boolean value, which may be null.
+     *
+     * @param reader the JSON reader.
+     * @return the boolean, or null.
+     *
+     * @throws IOException
+     */
+    private static Boolean nextBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BOOLEAN) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    /**
+     * Read a number value, which may be null.
+     *
+     * @param reader the JSON reader.
+     * @return the number, or null.
+     *
+     * @throws IOException
+     */
+    private static Double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    /**
+     * A listing being read.
+     */
+    private static final class ListingBuilder {
+
+        /**
+         * The posts that can be shared.
+         */
+        private final HashSet<RedditPost> posts = new LinkedHashSet<>();
+
+        /**
+         * Fullname of the first child.
+         */
+        private String firstFullname;
+
+        /**
+         * Number of children read.
+         */
+        private int size;
+    }
+}
@@ -17,96 +17,136 @@
 package xyz.vallat.louis.redditHandler;
 
 /**
- * This is an abstract class to define all RedditPosts.
+ * Reddit post object representation. The posts are kept in every listing and
+ * every claim, so they are compact: the base 36 id is stored as a number, the
+ * flags share a byte, and the author, subreddit and hint are pooled strings.
+ * Two posts are equal if they have the same id.
  *
  * @author louis
  */
-public abstract class RedditPost {
+public final class RedditPost {
 
     /**
-     * Post's id.
+     * Flag of the posts in quarantine.
      */
-    protected String postId;
+    private static final byte QUARANTINE = 1;
 
     /**
-     * Post's title.
+     * Flag of the crosspostable posts.
      */
-    protected String title;
+    private static final byte CROSSPOSTABLE = 1 << 1;
 
     /**
-     * Is the post in quarantine?
+     * Flag of the NSFW posts.
      */
-    protected boolean quarantine;
+    private static final byte OVER_18 = 1 << 2;
 
     /**
-     * Post's score.
+     * Flag of the spoilers.
      */
-    protected double score;
+    private static final byte SPOILER = 1 << 3;
 
     /**
-     * Post's hint.
+     * Post's id, decoded from base 36.
      */
-    protected String postHint;
+    private final long id;
 
     /**
-     * Is this post crosspostable?
+     * Post's type.
      */
-    protected boolean crosspostable;
+    private final Type type;
 
     /**
-     * Is this post NSFW?
+     * Post's subreddit.
+     */
+    private final String subreddit;
+
+    /**
+     * Post's title.
      */
-    protected boolean over18;
+    private final String title;
 
     /**
      * Post's author.
      */
-    protected String author;
+    private final String author;
 
     /**
      * Post's permalink.
      */
-    protected String permalink;
+    private final String permalink;
 
     /**
-     * Is this post a spoiler?
+     * Post's media url.
      */
-    protected boolean spoiler;
+    private final String url;
 
     /**
-     * Post's media url.
+     * Post's hint.
+     */
+    private final String postHint;
+
+    /**
+     * Post's score.
+     */
+    private int score;
+
+    /**
+     * Post's flags.
      */
-    protected String url;
+    private byte flags;
 
     /**
      * Main constructor for a Reddit post.
      *
-     * @param id post's id
+     * @param id post's id, decoded from base 36
+     * @param type post's type
+     * @param subreddit post's subreddit
      * @param title post's title
-     * @param quarantine is this post in quarantine?
-     * @param score post's score
+     * @param author post's author
+     * @param permalink post's permalink
+     * @param url post's media url
      * @param postHint post's hint
+     * @param score post's score
+     * @param quarantine is this post in quarantine?
      * @param crosspostable is post crosspostable?
      * @param over18 is post NSFW?
-     * @param author post's author
-     * @param permalink post's permalink
      * @param spoiler is this post a spoiler?
-     * @param url post's media url
      */
-    public RedditPost(String id, String title, boolean quarantine, double score,
-            String postHint, boolean crosspostable, boolean over18,
-            String author, String permalink, boolean spoiler, String url) {
-        this.postId = id;
+    public RedditPost(long id, Type type, String subreddit, String title,
+            String author, String permalink, String url, String postHint,
+            int score, boolean quarantine, boolean crosspostable,
+            boolean over18, boolean spoiler) {
+        this.id = id;
+        this.type = type;
+        this.subreddit = subreddit;
         this.title = title;
-        this.quarantine = quarantine;
-        this.score = score;
-        this.postHint = postHint;
-        this.crosspostable = crosspostable;
-        this.over18 = over18;
         this.author = author;
         this.permalink = permalink;
-        this.spoiler = spoiler;
         this.url = url;
+        this.postHint = postHint;
+        this.score = score;
+        this.flags = (byte) ((quarantine ? QUARANTINE : 0)
+                | (crosspostable ? CROSSPOSTABLE : 0)
+                | (over18 ? OVER_18 : 0)
+                | (spoiler ? SPOILER : 0));
+    }
+
+    /**
+     * Decode a base 36 post id.
+     *
+     * @param postId the post id, like "yant4c".
+     * @return the decoded id.
+     *
+     * @throws NumberFormatException
+     */
+    public static long decodeId(String postId) {
+        long id = Long.parseLong(postId, 36);
+        if (id < 0) {
+            throw new NumberFormatException(
+                    "Post id should be positive, and it was " + postId + ".");
+        }
+        return id;
     }
 
     /**
@@ -136,13 +176,22 @@ public abstract class RedditPost {
         return title;
     }
 
+    /**
+     * Get post's subreddit.
+     *
+     * @return post's subreddit.
+     */
+    public String getSubreddit() {
+        return subreddit;
+    }
+
     /**
      * Is this post in quarantine?
      *
      * @return if the post is in quarantine.
      */
     public boolean isQuarantine() {
-        return quarantine;
+        return (flags & QUARANTINE) != 0;
     }
 
     /**
@@ -151,7 +200,7 @@ public abstract class RedditPost {
      * @param state the state to apply.
      */
     public void setQuarantineState(boolean state) {
-        this.quarantine = state;
+        this.flags = (byte) (state ? flags | QUARANTINE : flags & ~QUARANTINE);
     }
 
     /**
@@ -169,7 +218,7 @@ public abstract class RedditPost {
      * @param newScore the new score.
      */
     public void updateScore(double newScore) {
-        this.score = newScore;
+        this.score = (int) newScore;
     }
 
     /**
@@ -187,7 +236,7 @@ public abstract class RedditPost {
      * @return if the post is crosspostable.
      */
     public boolean isCrosspostable() {
-        return crosspostable;
+        return (flags & CROSSPOSTABLE) != 0;
     }
 
     /**
@@ -196,7 +245,7 @@ public abstract class RedditPost {
      * @return if the post is Not Safe For Work.
      */
     public boolean isOver18() {
-        return over18;
+        return (flags & OVER_18) != 0;
     }
 
     /**
@@ -223,16 +272,34 @@ public abstract class RedditPost {
      * @return if the post is a spoiler.
      */
     public boolean isSpoiler() {
-        return spoiler;
+        return (flags & SPOILER) != 0;
     }
 
     /**
-     * Get post's id.
+     * Get post's id, as Reddit writes it.
      *
-     * @return post's id.
+     * @return post's id in base 36.
      */
     public String getPostId() {
-        return postId;
+        return Long.toString(id, 36);
+    }
+
+    /**
+     * Get post's id, decoded from base 36.
+     *
+     * @return post's id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Get post's type.
+     *
+     * @return post's type.
+     */
+    public Type getType() {
+        return type;
     }
 
     /**
@@ -240,26 +307,93 @@ public abstract class RedditPost {
      *
      * @return if the post is an image.
      */
-    public abstract boolean isImage();
+    public boolean isImage() {
+        return type == Type.IMAGE;
+    }
 
     /**
      * Is this post a text?
      *
      * @return if the post is a text.
      */
-    public abstract boolean isText();
+    public boolean isText() {
+        return type == Type.TEXT;
+    }
 
     /**
      * Is this post a video?
      *
      * @return if the post is a video.
      */
-    public abstract boolean isVideo();
+    public boolean isVideo() {
+        return type == Type.VIDEO;
+    }
 
     /**
      * Is this post a link?
      *
      * @return if the post is a link.
      */
-    public abstract boolean isLink();
+    public boolean isLink() {
+        return type == Type.LINK;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RedditPost && ((RedditPost) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return type.name().toLowerCase() + " post " + getPostId();
+    }
+
+    /**
+     * Type of a post.
+     */
+    public enum Type {
+        /**
+         * An image post.
+         */
+        IMAGE,
+        /**
+         * A link post.
+         */
+        LINK,
+        /**
+         * A text post.
+         */
+        TEXT,
+        /**
+         * A video post, hosted by Reddit or embedded.
+         */
+        VIDEO;
+
+        /**
+         * Get the type of a post from its hint.
+         *
+         * @param postHint the post's hint.
+         * @return the type, or null if the hint is not handled.
+         */
+        public static Type fromHint(String postHint) {
+            if (postHint.contains("video")) {
+                return VIDEO;
+            }
+            switch (postHint) {
+                case "image":
+                    return IMAGE;
+                case "link":
+                    return LINK;
+                case "text":
+                    return TEXT;
+                default:
+                    return null;
+            }
+        }
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.redditHandler;
+
+/**
+ * A small pool of canonical strings, so the values repeated by every post of
+ * a listing, like the authors or the subreddits, are kept in memory once.
+ * The pool is a fixed table indexed by the string hash: a new string takes the
+ * slot of the old one, so the pool never grows and never needs a lock.
+ *
+ * @author louis
+ */
+final class StringPool {
+
+    /**
+     * The slots of the pool. The size is a power of two.
+     */
+    private final String[] slots;
+
+    /**
+     * Create a pool.
+     *
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    StringPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity should be positive, and it was "
+                    + capacity + ".");
+        }
+        this.slots = new String[Integer.highestOneBit(capacity - 1) << 1];
+    }
+
+    /**
+     * Get the canonical instance of a string.
+     *
+     * @param value the string, may be null.
+     * @return the pooled string equal to the value, or the value itself.
+     */
+    String get(String value) {
+        if (value == null) {
+            return null;
+        }
+        int h = value.hashCode();
+        int index = (h ^ (h >>> 16)) & (this.slots.length - 1);
+        String pooled = this.slots[index];
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        this.slots[index] = value;
+        return value;
+    }
+}
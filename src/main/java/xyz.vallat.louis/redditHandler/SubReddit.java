@@ -35,6 +35,11 @@ public final class SubReddit {
      */
     private final String name;
 
+    /**
+     * Base URL of Reddit, without its trailing slash.
+     */
+    private final String baseURL;
+
     /**
      * Subreddit's URL.
      */
@@ -46,9 +51,10 @@ public final class SubReddit {
     private final String jsonURL;
 
     /**
-     * Dist limit for the JSON api call.
+     * Dist limit for the JSON api call. It can be changed by a config reload
+     * while the subreddit is polled.
      */
-    private int limit;
+    private volatile int limit;
 
     /**
      * Order for the JSON (by default, new).
@@ -56,7 +62,43 @@ public final class SubReddit {
     private String order;
 
     /**
-     * Main constructor.
+     * After how many empty incremental polls a full listing is asked again, in
+     * case the post used as cursor has been deleted.
+     */
+    private static final int FULL_POLL_EVERY = 10;
+
+    /**
+     * Fullname of the newest post seen. Only the posts newer than it are
+     * asked for.
+     */
+    private String before;
+
+    /**
+     * Number of incremental polls in a row that returned nothing.
+     */
+    private int emptyPolls;
+
+    /**
+     * URL of the last listing that came with validators.
+     */
+    private String validatedURL;
+
+    /**
+     * ETag of the last listing.
+     */
+    private String entityTag;
+
+    /**
+     * Last-Modified date of the last listing.
+     */
+    private String lastModified;
+
+    /**
+     * Main constructor. The limit and the order can be set for this subreddit
+     * only with the subreddit.&lt;name&gt;.reddit_posts_limit and
+     * subreddit.&lt;name&gt;.reddit_posts_sorting_order properties, otherwise
+     * the global ones are used. Reddit is reached at the reddit_base_url
+     * property, https://www.reddit.com by default.
      *
      * @param name subreddit's name
      *
@@ -68,14 +110,33 @@ public final class SubReddit {
     public SubReddit(String name) throws NoSuchProperty, NoSuchFile,
             NotSufficientRights, NoSuchOrder {
         this.name = name;
-        ConfigFileReader reader = new ConfigFileReader();
-        setLimit(Integer.valueOf(reader.getProperties("reddit_posts_limit")));
-        setOrder(reader.getProperties("reddit_posts_sorting_order"));
-        this.url = "https://www.reddit.com/r/" + name + "/";
+        ConfigFileReader reader = ConfigFileReader.getSingleton();
+        setLimit(getLimit(reader, name));
+        setOrder(reader.getProperties(
+                "subreddit." + name + ".reddit_posts_sorting_order",
+                reader.getProperties("reddit_posts_sorting_order")));
+        this.baseURL = reader.getProperties("reddit_base_url",
+                "https://www.reddit.com").replaceAll("/+$", "");
+        this.url = this.baseURL + "/r/" + name + "/";
         this.jsonURL
                 = this.url.substring(0, this.url.length()) + order + ".json";
     }
 
+    /**
+     * Read the dist limit of a subreddit from the config file.
+     *
+     * @param reader the config file.
+     * @param name subreddit's name
+     * @return the limit.
+     *
+     * @throws NoSuchProperty
+     */
+    public static int getLimit(ConfigFileReader reader, String name)
+            throws NoSuchProperty {
+        return reader.getInt("subreddit." + name + ".reddit_posts_limit",
+                reader.getInt("reddit_posts_limit"));
+    }
+
     /**
      * Set subreddit dist limit for parsing JSON file.
      *
@@ -138,11 +199,96 @@ public final class SubReddit {
     }
 
     /**
-     * Get the JSON URL.
+     * Get the base URL of Reddit.
+     *
+     * @return the base URL, without its trailing slash.
+     */
+    public String getBaseURL() {
+        return baseURL;
+    }
+
+    /**
+     * Get the JSON URL. For the new order, only the posts newer than the
+     * newest post already seen are asked.
      *
      * @return the subreddit's JSON URL.
      */
     public String getJsonURL() {
-        return jsonURL + "?limit=" + limit;
+        return jsonURL + "?limit=" + limit
+                + (before != null ? "&before=" + before : "");
+    }
+
+    /**
+     * Can the subreddit be polled incrementally? Only the new order is sorted
+     * by date.
+     *
+     * @return if the subreddit is polled incrementally.
+     */
+    public boolean isIncremental() {
+        return "new".equals(order);
+    }
+
+    /**
+     * Is the next listing only going to have the posts newer than the newest
+     * post seen?
+     *
+     * @return if the polling cursor is set.
+     */
+    public boolean hasCursor() {
+        return before != null;
+    }
+
+    /**
+     * Move the incremental polling cursor after a listing has been read.
+     *
+     * @param listing the listing read.
+     */
+    public void updateCursor(RedditListing listing) {
+        if (!isIncremental()) {
+            return;
+        }
+        if (listing.getFirstFullname() != null) {
+            this.before = listing.getFirstFullname();
+            this.emptyPolls = 0;
+        } else if (this.before != null && ++this.emptyPolls >= FULL_POLL_EVERY) {
+            this.before = null;
+            this.emptyPolls = 0;
+        }
+    }
+
+    /**
+     * Save the validators sent with a listing, to ask for it again only if it
+     * has been modified.
+     *
+     * @param jsonURL the listing URL.
+     * @param entityTag the ETag header, may be null.
+     * @param lastModified the Last-Modified header, may be null.
+     */
+    public void setValidators(String jsonURL, String entityTag,
+            String lastModified) {
+        this.validatedURL = jsonURL;
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Get the ETag of the last listing, if it was for the same URL.
+     *
+     * @param jsonURL the listing URL.
+     * @return the ETag, or null.
+     */
+    public String getEntityTag(String jsonURL) {
+        return jsonURL.equals(validatedURL) ? entityTag : null;
+    }
+
+    /**
+     * Get the Last-Modified date of the last listing, if it was for the same
+     * URL.
+     *
+     * @param jsonURL the listing URL.
+     * @return the Last-Modified date, or null.
+     */
+    public String getLastModified(String jsonURL) {
+        return jsonURL.equals(validatedURL) ? lastModified : null;
     }
 }
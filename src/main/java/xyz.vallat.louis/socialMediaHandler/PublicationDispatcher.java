@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.socialMediaHandler;
+
+import xyz.vallat.louis.Workers;
+import xyz.vallat.louis.exceptions.RateLimited;
+import xyz.vallat.louis.mediaHandler.ImageProcessor;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publish a post on all the social medias at the same time. Every social media
+ * runs on its own task of a bounded pool, its image is first fitted to its
+ * limits, its reply is sent right after its own post, and a slow social media
+ * never delays the others. A post whose reply failed can be given again,
+ * to only send its reply.
+ *
+ * @author louis
+ */
+public final class PublicationDispatcher {
+
+    /**
+     * The pool running the publications.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * How long a social media can take to post and reply, in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * Fit the images to every social media, or null to upload them as they
+     * are.
+     */
+    private final ImageProcessor images;
+
+    /**
+     * Main constructor.
+     *
+     * @param threads how many publications can run at the same time.
+     * @param timeout how long a social media can take to post and reply, in
+     * seconds.
+     * @param images fit the images to every social media, or null to upload
+     * them as they are.
+     */
+    public PublicationDispatcher(int threads, int timeout,
+            ImageProcessor images) {
+        this.executor = Workers.newPool("publisher", threads);
+        this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+        this.images = images;
+    }
+
+    /**
+     * Publish an image with a caption on all the given social medias, and
+     * reply to each publication with a text. A social media still running at
+     * the timeout is interrupted. If a call to it was being sent, the outcome
+     * of the publication is unknown: it may have been published.
+     *
+     * @param socialMedias the social medias.
+     * @param caption the image caption.
+     * @param imagePath path to the image.
+     * @param reply the text to reply to the publication.
+     * @param posted the references of the posts already published whose
+     * reply is missing, by social media name.
+     * @return the result for every social media, by social media name.
+     */
+    public Map<String, PublicationResult> publish(
+            List<SocialMediaPoster> socialMedias, String caption,
+            String imagePath, String reply, Map<String, Long> posted) {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        List<Publication> publications = new ArrayList<>();
+        List<Future<PublicationResult>> futures = new ArrayList<>();
+        for (SocialMediaPoster s : socialMedias) {
+            Publication publication = new Publication(s, caption, imagePath,
+                    reply, posted.getOrDefault(s.getSocialMediaName(), 0L));
+            publications.add(publication);
+            futures.add(this.executor.submit(publication));
+        }
+        Map<String, PublicationResult> results = new LinkedHashMap<>();
+        long deadline = System.currentTimeMillis() + this.timeout;
+        for (int i = 0; i < socialMedias.size(); i++) {
+            String name = socialMedias.get(i).getSocialMediaName();
+            Publication publication = publications.get(i);
+            Future<PublicationResult> future = futures.get(i);
+            PublicationResult result;
+            try {
+                result = future.get(Math.max(0,
+                        deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                // Read before the interruption ends the call.
+                result = publication.timedOut();
+                future.cancel(true);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RateLimited) {
+                    result = PublicationResult.rateLimited(name,
+                            publication.postRef, ex.getCause().getMessage(),
+                            ((RateLimited) ex.getCause()).getRetryAt());
+                } else {
+                    result = PublicationResult.failure(name,
+                            publication.postRef,
+                            String.valueOf(ex.getCause()));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                result = PublicationResult.failure(name, publication.postRef,
+                        "interrupted");
+            }
+            metrics.counter("publications_total", "platform", name,
+                    "result", result.isSuccess() ? "success"
+                            : result.isUnknown() ? "unknown"
+                                    : result.isRateLimited() ? "rate_limited"
+                                            : "failure").increment();
+            results.put(name, result);
+        }
+        return results;
+    }
+
+    /**
+     * The publication of a post on a social media: the image is fitted, then
+     * posted, then replied to.
+     */
+    private final class Publication implements Callable<PublicationResult> {
+
+        /**
+         * The social media.
+         */
+        private final SocialMediaPoster socialMedia;
+
+        /**
+         * The image caption.
+         */
+        private final String caption;
+
+        /**
+         * Path to the image.
+         */
+        private final String imagePath;
+
+        /**
+         * The text to reply to the post.
+         */
+        private final String reply;
+
+        /**
+         * Reference of the post once published, 0 before.
+         */
+        private volatile long postRef;
+
+        /**
+         * If a call to the social media is being sent.
+         */
+        private volatile boolean sending;
+
+        /**
+         * Main constructor.
+         *
+         * @param socialMedia the social media.
+         * @param caption the image caption.
+         * @param imagePath path to the image.
+         * @param reply the text to reply to the post.
+         * @param postRef reference of the post if it is already published,
+         * 0 otherwise.
+         */
+        private Publication(SocialMediaPoster socialMedia, String caption,
+                String imagePath, String reply, long postRef) {
+            this.socialMedia = socialMedia;
+            this.caption = caption;
+            this.imagePath = imagePath;
+            this.reply = reply;
+            this.postRef = postRef;
+        }
+
+        @Override
+        public PublicationResult call() throws Exception {
+            MetricsRegistry metrics = MetricsRegistry.getSingleton();
+            String platform = this.socialMedia.getSocialMediaName();
+            if (this.postRef == 0) {
+                String path = this.imagePath;
+                if (images != null) {
+                    CompletableFuture<String> processed
+                            = images.processAsync(this.imagePath, platform);
+                    try {
+                        path = processed.get();
+                    } catch (InterruptedException ex) {
+                        processed.thenAccept(images::release);
+                        throw ex;
+                    }
+                }
+                long ref;
+                long start = System.nanoTime();
+                this.sending = true;
+                try {
+                    ref = this.socialMedia.postImage(this.caption, path);
+                } finally {
+                    this.sending = false;
+                    metrics.timer("platform_post_seconds",
+                            "platform", platform).recordSince(start);
+                    if (images != null) {
+                        images.release(path);
+                    }
+                }
+                if (ref == 0 || ref == -1) {
+                    return PublicationResult.failure(platform, 0,
+                            "post failed");
+                }
+                this.postRef = ref;
+            }
+            long replyRef;
+            long start = System.nanoTime();
+            this.sending = true;
+            try {
+                replyRef = this.socialMedia.replyText(this.reply,
+                        this.postRef);
+            } catch (RateLimited ex) {
+                return PublicationResult.rateLimited(platform, this.postRef,
+                        ex.getMessage(), ex.getRetryAt());
+            } finally {
+                this.sending = false;
+                metrics.timer("platform_reply_seconds",
+                        "platform", platform).recordSince(start);
+            }
+            if (replyRef == 0 || replyRef == -1) {
+                return PublicationResult.failure(platform, this.postRef,
+                        "reply failed");
+            }
+            return PublicationResult.success(platform, this.postRef);
+        }
+
+        /**
+         * Get the result of the publication when it timed out.
+         *
+         * @return unknown if a call was being sent, failed otherwise.
+         */
+        private PublicationResult timedOut() {
+            String platform = this.socialMedia.getSocialMediaName();
+            return this.sending
+                    ? PublicationResult.unknown(platform, this.postRef)
+                    : PublicationResult.failure(platform, this.postRef,
+                            "timed out");
+        }
+    }
+
+    /**
+     * Stop the pools.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        if (this.images != null) {
+            this.images.shutdown();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.socialMediaHandler;
+
+/**
+ * Result of the publication of a post on a social media. A post can be
+ * published while its reply failed, and a publication can be rate limited
+ * rather than failed, to be tried again once the budget is back. When a
+ * publication timed out while a call was being sent, its outcome is unknown,
+ * and it must not be sent again, so the post isn't published twice.
+ *
+ * @author louis
+ */
+public final class PublicationResult {
+
+    /**
+     * The social media name.
+     */
+    private final String socialMediaName;
+
+    /**
+     * Reference of the post on the social media, 0 if it wasn't posted.
+     */
+    private final long postRef;
+
+    /**
+     * Why the publication failed, null if it succeeded.
+     */
+    private final String error;
+
+    /**
+     * When the budget of the social media is back, in milliseconds, or 0 if
+     * the publication wasn't rate limited.
+     */
+    private final long retryAt;
+
+    /**
+     * If the outcome of the publication is unknown.
+     */
+    private final boolean unknown;
+
+    /**
+     * Main constructor.
+     *
+     * @param socialMediaName the social media name.
+     * @param postRef reference of the post on the social media.
+     * @param error why the publication failed, null if it succeeded.
+     * @param retryAt when the budget is back, or 0.
+     * @param unknown if the outcome of the publication is unknown.
+     */
+    private PublicationResult(String socialMediaName, long postRef,
+            String error, long retryAt, boolean unknown) {
+        this.socialMediaName = socialMediaName;
+        this.postRef = postRef;
+        this.error = error;
+        this.retryAt = retryAt;
+        this.unknown = unknown;
+    }
+
+    /**
+     * Build a successful result, the post and its reply being published.
+     *
+     * @param socialMediaName the social media name.
+     * @param postRef reference of the post on the social media.
+     * @return the result.
+     */
+    public static PublicationResult success(String socialMediaName,
+            long postRef) {
+        return new PublicationResult(socialMediaName, postRef, null, 0,
+                false);
+    }
+
+    /**
+     * Build a failed result.
+     *
+     * @param socialMediaName the social media name.
+     * @param postRef reference of the post if it was published but not its
+     * reply, 0 otherwise.
+     * @param error why the publication failed.
+     * @return the result.
+     */
+    public static PublicationResult failure(String socialMediaName,
+            long postRef, String error) {
+        return new PublicationResult(socialMediaName, postRef, error, 0,
+                false);
+    }
+
+    /**
+     * Build a rate limited result.
+     *
+     * @param socialMediaName the social media name.
+     * @param postRef reference of the post if it was published but not its
+     * reply, 0 otherwise.
+     * @param error why the publication was rate limited.
+     * @param retryAt when the budget is back, in milliseconds.
+     * @return the result.
+     */
+    public static PublicationResult rateLimited(String socialMediaName,
+            long postRef, String error, long retryAt) {
+        return new PublicationResult(socialMediaName, postRef, error,
+                Math.max(1, retryAt), false);
+    }
+
+    /**
+     * Build a result whose outcome is unknown, because it timed out while a
+     * call was being sent.
+     *
+     * @param socialMediaName the social media name.
+     * @param postRef reference of the post if it was published and its reply
+     * was being sent, 0 if the post itself was being sent.
+     * @return the result.
+     */
+    public static PublicationResult unknown(String socialMediaName,
+            long postRef) {
+        return new PublicationResult(socialMediaName, postRef,
+                "timed out while sending", 0, true);
+    }
+
+    /**
+     * Get the social media name.
+     *
+     * @return the social media name.
+     */
+    public String getSocialMediaName() {
+        return socialMediaName;
+    }
+
+    /**
+     * Have the post and its reply been published?
+     *
+     * @return if the publication succeeded.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Has the post been published, even if its reply wasn't?
+     *
+     * @return if the post is on the social media.
+     */
+    public boolean isPosted() {
+        return postRef != 0;
+    }
+
+    /**
+     * Was the publication stopped by the budget of the social media?
+     *
+     * @return if the publication was rate limited.
+     */
+    public boolean isRateLimited() {
+        return retryAt > 0;
+    }
+
+    /**
+     * Is the outcome of the publication unknown? It may have been published,
+     * so it must not be sent again.
+     *
+     * @return if the outcome is unknown.
+     */
+    public boolean isUnknown() {
+        return unknown;
+    }
+
+    /**
+     * Get the reference of the post on the social media.
+     *
+     * @return the post reference, 0 if it wasn't posted.
+     */
+    public long getPostRef() {
+        return postRef;
+    }
+
+    /**
+     * Get why the publication failed.
+     *
+     * @return the error, null if it succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Get when the budget of the social media is back.
+     *
+     * @return the time in milliseconds, or 0 if it wasn't rate limited.
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess()
+                ? socialMediaName + ": published (" + postRef + ")"
+                : socialMediaName + (isUnknown() ? ": unknown ("
+                        : isRateLimited() ? ": rate limited ("
+                        : ": failed (") + error + ")";
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.socialMediaHandler;
+
+import xyz.vallat.louis.ConfigFileReader;
+import xyz.vallat.louis.exceptions.NoSuchFile;
+import xyz.vallat.louis.exceptions.NotSufficientRights;
+import xyz.vallat.louis.exceptions.RateLimited;
+import xyz.vallat.louis.metricsHandler.MetricsRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter around a social media poster. Posts and replies each have
+ * their own token bucket, configured per social media. A call over budget
+ * waits for its token, in the arrival order, and the reset times reported by
+ * the social media pause both buckets. A call that would wait longer than the
+ * longest wait isn't sent, and throws RateLimited with the time its budget is
+ * back, to be tried again then, like a call the social media rejected for its
+ * own rate limit.
+ *
+ * @author louis
+ */
+public final class RateLimitedPoster implements SocialMediaPoster {
+
+    /**
+     * The rate limited social media.
+     */
+    private final SocialMediaPoster delegate;
+
+    /**
+     * Bucket of the posts.
+     */
+    private final TokenBucket posts;
+
+    /**
+     * Bucket of the replies.
+     */
+    private final TokenBucket replies;
+
+    /**
+     * Longest wait for a token, in nanoseconds.
+     */
+    private final long maxWait;
+
+    /**
+     * How many calls are waiting for a token.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Last reset time reported by the social media.
+     */
+    private long lastReset;
+
+    /**
+     * Build the rate limiter of a social media from the config file.
+     *
+     * @param delegate the social media.
+     *
+     * @throws NoSuchFile
+     * @throws NotSufficientRights
+     */
+    public RateLimitedPoster(SocialMediaPoster delegate)
+            throws NoSuchFile, NotSufficientRights {
+        this(delegate, ConfigFileReader.getSingleton());
+    }
+
+    /**
+     * Build the rate limiter of a social media from a config.
+     *
+     * @param delegate the social media.
+     * @param reader the config.
+     */
+    private RateLimitedPoster(SocialMediaPoster delegate,
+            ConfigFileReader reader) {
+        this(delegate,
+                bucket(reader, delegate.getSocialMediaName(), "post"),
+                bucket(reader, delegate.getSocialMediaName(), "reply"),
+                reader.getInt("rate_limit_max_wait", 60));
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param delegate the social media.
+     * @param posts bucket of the posts.
+     * @param replies bucket of the replies.
+     * @param maxWait longest wait for a token, in seconds.
+     */
+    public RateLimitedPoster(SocialMediaPoster delegate, TokenBucket posts,
+            TokenBucket replies, int maxWait) {
+        this.delegate = delegate;
+        this.posts = posts;
+        this.replies = replies;
+        this.maxWait = TimeUnit.SECONDS.toNanos(maxWait);
+        MetricsRegistry.getSingleton().gauge("rate_limit_queued",
+                this.queued::get, "platform", getSocialMediaName());
+    }
+
+    /**
+     * Build the bucket of an endpoint from the config, with the
+     * rate_limit.platform.endpoint.burst and .per_hour keys.
+     *
+     * @param reader the config.
+     * @param platform the social media name.
+     * @param endpoint the endpoint type.
+     * @return the bucket.
+     */
+    private static TokenBucket bucket(ConfigFileReader reader,
+            String platform, String endpoint) {
+        String prefix = "rate_limit." + platform + "." + endpoint + ".";
+        return new TokenBucket(
+                reader.getInt(prefix + "burst", 5),
+                reader.getDouble(prefix + "per_hour", 50));
+    }
+
+    @Override
+    public String getSocialMediaName() {
+        return this.delegate.getSocialMediaName();
+    }
+
+    @Override
+    public long postText(String text) {
+        return call(this.posts, "post",
+                () -> this.delegate.postText(text));
+    }
+
+    @Override
+    public long postImage(String imagePath) {
+        return call(this.posts, "post",
+                () -> this.delegate.postImage(imagePath));
+    }
+
+    @Override
+    public long postImage(String text, String imagePath) {
+        return call(this.posts, "post",
+                () -> this.delegate.postImage(text, imagePath));
+    }
+
+    @Override
+    public long replyText(String text, long tweetId) {
+        return call(this.replies, "reply",
+                () -> this.delegate.replyText(text, tweetId));
+    }
+
+    @Override
+    public long getRateLimitReset() {
+        return this.delegate.getRateLimitReset();
+    }
+
+    /**
+     * Wait for a token, then call the social media.
+     *
+     * @param bucket the bucket of the endpoint.
+     * @param endpoint the endpoint type.
+     * @param request the call.
+     * @return the call result, or 0 if it wasn't sent.
+     *
+     * @throws RateLimited
+     */
+    private long call(TokenBucket bucket, String endpoint,
+            LongSupplier request) {
+        MetricsRegistry metrics = MetricsRegistry.getSingleton();
+        String platform = getSocialMediaName();
+        long wait = bucket.reserve();
+        if (wait > this.maxWait) {
+            bucket.cancel();
+            metrics.counter("rate_limit_rejected_total", "platform", platform,
+                    "endpoint", endpoint).increment();
+            throw new RateLimited(platform + " " + endpoint
+                    + " budget is exhausted for "
+                    + TimeUnit.NANOSECONDS.toSeconds(wait) + " seconds",
+                    System.currentTimeMillis()
+                    + TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+        if (wait > 0) {
+            System.out.println("[*] Waiting " + TimeUnit.NANOSECONDS
+                    .toMillis(wait) + " ms for the " + platform + " "
+                    + endpoint + " budget.");
+            this.queued.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                bucket.cancel();
+                return 0;
+            } finally {
+                this.queued.decrementAndGet();
+            }
+        }
+        metrics.timer("rate_limit_wait_seconds", "platform", platform,
+                "endpoint", endpoint).record(wait);
+        try {
+            return request.getAsLong();
+        } finally {
+            checkReset();
+        }
+    }
+
+    /**
+     * Pause the buckets if the social media reported a new reset time.
+     */
+    private synchronized void checkReset() {
+        long reset = this.delegate.getRateLimitReset();
+        if (reset > this.lastReset) {
+            this.lastReset = reset;
+            long delay = TimeUnit.MILLISECONDS.toNanos(
+                    reset - System.currentTimeMillis());
+            if (delay > 0) {
+                System.err.println("[!] " + getSocialMediaName()
+                        + " is rate limited for "
+                        + TimeUnit.NANOSECONDS.toSeconds(delay)
+                        + " seconds.");
+                this.posts.pause(delay);
+                this.replies.pause(delay);
+            }
+        }
+    }
+}
@@ -32,4 +32,13 @@ public interface SocialMediaPoster {
     public long postImage(String text, String imagePath);
 
     public long replyText(String text, long tweetId);
+
+    /**
+     * Get when the rate limit the social media last reported ends.
+     *
+     * @return the reset time in milliseconds, or 0 if none was reported.
+     */
+    public default long getRateLimitReset() {
+        return 0;
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis.socialMediaHandler;
+
+/**
+ * Token bucket. The bucket holds a burst of tokens and refills at a steady
+ * rate. Tokens are reserved in advance: a caller over budget is told how long
+ * to wait for its token, so the callers are served in their arrival order.
+ *
+ * @author louis
+ */
+public final class TokenBucket {
+
+    /**
+     * How many tokens the bucket holds at most.
+     */
+    private final double capacity;
+
+    /**
+     * Tokens added per nanosecond.
+     */
+    private final double rate;
+
+    /**
+     * Tokens in the bucket. Negative when tokens are reserved in advance.
+     */
+    private double tokens;
+
+    /**
+     * When the tokens were last refilled, in nanoseconds.
+     */
+    private long refilled;
+
+    /**
+     * No token is given before this time, in nanoseconds.
+     */
+    private long pausedUntil;
+
+    /**
+     * Main constructor. The bucket starts full.
+     *
+     * @param capacity how many tokens the bucket holds at most.
+     * @param perHour how many tokens are added per hour.
+     */
+    public TokenBucket(int capacity, double perHour) {
+        this.capacity = Math.max(1, capacity);
+        this.rate = perHour / 3.6e12;
+        this.tokens = this.capacity;
+        this.refilled = System.nanoTime();
+        this.pausedUntil = this.refilled;
+    }
+
+    /**
+     * Reserve a token.
+     *
+     * @return how long to wait before using it, in nanoseconds.
+     */
+    public synchronized long reserve() {
+        long now = refill();
+        this.tokens--;
+        long wait = this.tokens >= 0 ? 0
+                : (long) Math.ceil(-this.tokens / this.rate);
+        return Math.max(wait, this.pausedUntil - now);
+    }
+
+    /**
+     * Give back a reserved token that won't be used.
+     */
+    public synchronized void cancel() {
+        this.tokens = Math.min(this.capacity, this.tokens + 1);
+    }
+
+    /**
+     * Give no token until a given time, because the platform asked for it.
+     * The tokens left are dropped.
+     *
+     * @param delay how long to wait, in nanoseconds.
+     */
+    public synchronized void pause(long delay) {
+        long now = refill();
+        this.tokens = Math.min(this.tokens, 0);
+        this.pausedUntil = Math.max(this.pausedUntil, now + delay);
+    }
+
+    /**
+     * Add the tokens earned since the last refill.
+     *
+     * @return the current time, in nanoseconds.
+     */
+    private long refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity,
+                this.tokens + (now - this.refilled) * this.rate);
+        this.refilled = now;
+        return now;
+    }
+}
@@ -20,7 +20,9 @@ import xyz.vallat.louis.exceptions.NotSufficientRights;
 import xyz.vallat.louis.exceptions.NoSuchProperty;
 import xyz.vallat.louis.ConfigFileReader;
 import xyz.vallat.louis.exceptions.NoSuchFile;
+import xyz.vallat.louis.exceptions.RateLimited;
 import java.io.File;
+import twitter4j.RateLimitStatus;
 import twitter4j.StatusUpdate;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
@@ -59,6 +61,11 @@ public final class TwitterBot implements SocialMediaPoster {
      */
     private final String accessSecret;
 
+    /**
+     * When the last rate limit reported by Twitter ends, in milliseconds.
+     */
+    private volatile long rateLimitReset;
+
     /**
      * Main constructor for the Twitter Bot.
      *
@@ -67,7 +74,7 @@ public final class TwitterBot implements SocialMediaPoster {
      * @throws RedditReposterBot.exceptions.NoSuchProperty
      */
     public TwitterBot() throws NoSuchFile, NotSufficientRights, NoSuchProperty {
-        ConfigFileReader reader = new ConfigFileReader();
+        ConfigFileReader reader = ConfigFileReader.getSingleton();
         this.consumerKey = reader.getProperties("twitterAPI_consumerKey");
         this.consumerSecret = reader.getProperties("twitterAPI_consumerSecret");
         this.accessToken = reader.getProperties("twitterAPI_accessToken");
@@ -79,6 +86,16 @@ public final class TwitterBot implements SocialMediaPoster {
                 .setOAuthConsumerSecret(consumerSecret)
                 .setOAuthAccessToken(accessToken)
                 .setOAuthAccessTokenSecret(accessSecret);
+        // The API can be reached somewhere else, a stub server for instance.
+        String restBaseURL = reader.getProperties("twitterAPI_restBaseURL", "");
+        if (!restBaseURL.isEmpty()) {
+            cb.setRestBaseURL(restBaseURL);
+        }
+        String uploadBaseURL = reader.getProperties("twitterAPI_uploadBaseURL",
+                "");
+        if (!uploadBaseURL.isEmpty()) {
+            cb.setUploadBaseURL(uploadBaseURL);
+        }
 
         TwitterFactory factory = new TwitterFactory(cb.build());
         this.twitter = factory.getInstance();
@@ -113,6 +130,7 @@ public final class TwitterBot implements SocialMediaPoster {
             return twitter.updateStatus(text).getId();
         } catch (TwitterException te) {
             System.err.println("[!] TwitterException: " + te.getMessage());
+            checkRateLimit(te);
         }
         return 0;
     }
@@ -134,6 +152,7 @@ public final class TwitterBot implements SocialMediaPoster {
             return twitter.updateStatus(status).getId();
         } catch (TwitterException te) {
             System.err.println("[!] TwitterException: " + te.getMessage());
+            checkRateLimit(te);
         }
         return 0;
     }
@@ -156,10 +175,43 @@ public final class TwitterBot implements SocialMediaPoster {
             return twitter.updateStatus(status).getId();
         } catch (TwitterException te) {
             System.err.println("[!] TwitterException: " + te.getMessage());
+            checkRateLimit(te);
         }
         return 0;
     }
 
+    /**
+     * Record the reset time of a rate limit Twitter reported, and throw it so
+     * the call is tried again once the limit is over. Without reset time,
+     * the rate limit window of Twitter is used.
+     *
+     * @param te the Twitter exception.
+     *
+     * @throws RateLimited
+     */
+    private void checkRateLimit(TwitterException te) {
+        if (!te.exceededRateLimitation() && te.getErrorCode() != 88
+                && te.getErrorCode() != 185) {
+            return;
+        }
+        RateLimitStatus status = te.getRateLimitStatus();
+        int seconds = status != null && status.getSecondsUntilReset() > 0
+                ? status.getSecondsUntilReset() : 15 * 60;
+        this.rateLimitReset = System.currentTimeMillis() + seconds * 1000L;
+        throw new RateLimited(getSocialMediaName() + " is rate limited for "
+                + seconds + " seconds", this.rateLimitReset);
+    }
+
+    /**
+     * Get when the last rate limit reported by Twitter ends.
+     *
+     * @return the reset time in milliseconds, or 0.
+     */
+    @Override
+    public long getRateLimitReset() {
+        return rateLimitReset;
+    }
+
     /**
      * Get the social media name.
      *
@@ -186,7 +238,7 @@ public final class TwitterBot implements SocialMediaPoster {
      *
      * @param text the text to tweet.
      * @param tweetId the tweet id.
-     * @return the reply's id.
+     * @return the reply's id, or 0 if it failed.
      */
     @Override
     public long replyText(String text, long tweetId) {
@@ -195,11 +247,12 @@ public final class TwitterBot implements SocialMediaPoster {
         StatusUpdate statusReply = new StatusUpdate(text);
         statusReply.setInReplyToStatusId(tweetId);
         try {
-            twitter.updateStatus(statusReply);
+            return twitter.updateStatus(statusReply).getId();
         } catch (TwitterException ex) {
             System.err.println("TwitterException: " + ex.getMessage());
+            checkRateLimit(ex);
         }
-        return statusReply.getInReplyToStatusId();
+        return 0;
     }
 
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 louis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package xyz.vallat.louis;
+
+import xyz.vallat.louis.databaseHandler.DatabaseConnection;
+import xyz.vallat.louis.databaseHandler.HammingIndex;
+import xyz.vallat.louis.databaseHandler.OutboxEntry;
+import xyz.vallat.louis.socialMediaHandler.SocialMediaPoster;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Test of the outbox publisher with two social medias, one of them always
+ * failing. Reddit is never reached, the posts are put in the outbox with
+ * their media already downloaded.
+ *
+ * @author louis
+ */
+public final class OutboxPublisherTest {
+
+    /**
+     * How long to wait for an entry to reach a state, in milliseconds.
+     */
+    private static final long TIMEOUT = 30000;
+
+    /**
+     * An entry abandoned after its image was published on one social media
+     * keeps its image hash, so a repost of the image is a duplicate, even
+     * after a restart.
+     *
+     * @throws Exception
+     */
+    public void testAbandonedAfterPartialPublicationKeepsItsHash()
+            throws Exception {
+        File directory = Files.createTempDirectory("outbox-test").toFile();
+        File bot = new File(directory, "bot");
+        File media = new File(bot, "media");
+        if (!media.mkdirs()) {
+            throw new AssertionError("Can't create " + media + ".");
+        }
+        File image = new File(media, "image.png");
+        BufferedImage gradient = new BufferedImage(64, 64,
+                BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                gradient.setRGB(x, y, (x * 4) << 16 | (y * 4) << 8);
+            }
+        }
+        ImageIO.write(gradient, "png", image);
+        Properties settings = new Properties();
+        settings.setProperty("subreddit", "test");
+        settings.setProperty("delay", "60");
+        // Nothing listens there, the subreddit is checked again later.
+        settings.setProperty("reddit_base_url", "http://127.0.0.1:9");
+        settings.setProperty("retry_max_attempts", "1");
+        settings.setProperty("sqlite_db_name", "test.db");
+        settings.setProperty("clear_database", "Y");
+        settings.setProperty("reddit_posts_limit", "100");
+        settings.setProperty("reddit_posts_sorting_order", "new");
+        settings.setProperty("working_directory", bot.getPath());
+        settings.setProperty("max_text_length", "280");
+        settings.setProperty("config_hot_reload", "N");
+        settings.setProperty("publish_max_attempts", "1");
+        File settingsFile = new File(directory, "settings.conf");
+        try (OutputStream file = new FileOutputStream(settingsFile)) {
+            settings.store(file, "Outbox publisher test");
+        }
+        ConfigFileReader.load(settingsFile.getPath());
+
+        Hypervisor hypervisor = Hypervisor.getSingleton();
+        hypervisor.addSocialMedia(new StubPoster("Working", 1));
+        hypervisor.addSocialMedia(new StubPoster("Failing", 0));
+        DatabaseConnection database = new DatabaseConnection(
+                new File(bot, "test.db").getPath());
+        ScheduledExecutorService scheduler
+                = Executors.newSingleThreadScheduledExecutor();
+        try {
+            long first = add(database, "first", image);
+            hypervisor.getPublisher().start(scheduler);
+            waitFor(database, first, OutboxEntry.State.ABANDONED);
+            long second = add(database, "second", image);
+            hypervisor.getPublisher().wakeUp();
+            waitFor(database, second, OutboxEntry.State.DUPLICATE);
+            HammingIndex restarted = new HammingIndex(6);
+            hypervisor.getOutbox().loadImageHashes(restarted);
+            if (restarted.size() != 1) {
+                throw new AssertionError("The abandoned entry's hash isn't "
+                        + "loaded again: " + restarted.size() + " hashes.");
+            }
+        } finally {
+            scheduler.shutdownNow();
+            hypervisor.shutdown();
+            database.close();
+        }
+    }
+
+    /**
+     * Add a post to the outbox, with its media already downloaded.
+     *
+     * @param database the database.
+     * @param postId the post id.
+     * @param image its media.
+     * @return the entry id.
+     *
+     * @throws Exception
+     */
+    private static long add(DatabaseConnection database, String postId,
+            File image) throws Exception {
+        synchronized (database) {
+            PreparedStatement ajout = database.prepare(""
+                    + "INSERT INTO outbox (subreddit, postId, title, author, "
+                    + "permalink, url, state, mediaPath, createdAt) "
+                    + "VALUES ('test', ?, ?, 'louis', '/r/test', "
+                    + "'https://i.redd.it/image.png', ?, ?, ?);");
+            ajout.setString(1, postId);
+            ajout.setString(2, "Post " + postId);
+            ajout.setString(3, OutboxEntry.State.MEDIA_FETCHED.name());
+            ajout.setString(4, image.getPath());
+            ajout.setLong(5, System.currentTimeMillis());
+            ajout.executeUpdate();
+            try (ResultSet res = database.prepare(
+                    "SELECT last_insert_rowid() AS id;").executeQuery()) {
+                res.next();
+                return res.getLong("id");
+            }
+        }
+    }
+
+    /**
+     * Wait for an entry to reach a state.
+     *
+     * @param database the database.
+     * @param id the entry id.
+     * @param expected the state.
+     *
+     * @throws Exception
+     */
+    private static void waitFor(DatabaseConnection database, long id,
+            OutboxEntry.State expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        String state = null;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (database) {
+                PreparedStatement recherche = database.prepare(
+                        "SELECT state FROM outbox WHERE id = ?;");
+                recherche.setLong(1, id);
+                try (ResultSet res = recherche.executeQuery()) {
+                    state = res.next() ? res.getString("state") : null;
+                }
+            }
+            if (expected.name().equals(state)) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        throw new AssertionError("Entry " + id + " is " + state
+                + " instead of " + expected + ".");
+    }
+
+    /**
+     * Social media answering every post with the same reference.
+     */
+    private static final class StubPoster implements SocialMediaPoster {
+
+        /**
+         * The social media name.
+         */
+        private final String name;
+
+        /**
+         * Reference of every post, 0 for a failure.
+         */
+        private final long postRef;
+
+        /**
+         * Main constructor.
+         *
+         * @param name the social media name.
+         * @param postRef reference of every post, 0 for a failure.
+         */
+        private StubPoster(String name, long postRef) {
+            this.name = name;
+            this.postRef = postRef;
+        }
+
+        @Override
+        public String getSocialMediaName() {
+            return name;
+        }
+
+        @Override
+        public long postText(String text) {
+            return postRef;
+        }
+
+        @Override
+        public long postImage(String imagePath) {
+            return postRef;
+        }
+
+        @Override
+        public long postImage(String text, String imagePath) {
+            return postRef;
+        }
+
+        @Override
+        public long replyText(String text, long tweetId) {
+            return postRef;
+        }
+    }
+}